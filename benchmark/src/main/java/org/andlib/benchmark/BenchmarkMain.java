@@ -0,0 +1,35 @@
+package org.andlib.benchmark;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * runs benchmarks with jmh command line options, always with the gc profiler
+ * (so bytes allocated per operation are reported as gc.alloc.rate.norm)
+ * <br>
+ * <br>
+ * eg. java -jar target/benchmarks.jar FilterBenchmark -p size=1920x1080
+ *
+ * @author meinside@gmail.com
+ * @since 26.10.18.
+ *
+ * last update 26.10.18.
+ *
+ */
+public class BenchmarkMain
+{
+	public static void main(String[] args) throws Exception
+	{
+		CommandLineOptions options = new CommandLineOptions(args);
+		if(options.shouldHelp() || options.shouldList() || options.shouldListProfilers() || options.shouldListResultFormats() || options.shouldListWithParams())
+		{
+			Main.main(args);	//(only lists or prints help)
+			return;
+		}
+
+		new Runner(new OptionsBuilder().parent(options).addProfiler(GCProfiler.class).build()).run();
+	}
+}
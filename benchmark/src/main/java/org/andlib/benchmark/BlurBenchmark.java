@@ -0,0 +1,88 @@
+package org.andlib.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.andlib.helpers.image.BlurEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import outsourced.image.filter.kernel.KernelNxN;
+
+/**
+ * blurs of ARGB pixels: {@link BlurEngine} (behind ImageUtility.getBlurredBitmap()), and box blur kernel (of FilterNxNBoxBlur)
+ *
+ * @author meinside@gmail.com
+ * @since 26.10.18.
+ *
+ * last update 26.10.18.
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+@State(Scope.Thread)
+public class BlurBenchmark
+{
+	@Param({"2", "8", "25"})
+	public int radius;
+
+	@Param({"640x480", "1920x1080", "4000x3000"})
+	public String size;
+
+	@Param({"false", "true"})
+	public boolean parallel;
+
+	private BlurEngine engine;
+	private KernelNxN boxBlur;
+	private int width;
+	private int height;
+	private int[] srcPixels;
+	private int[] dstPixels;
+
+	@Setup
+	public void setUp()
+	{
+		engine = new BlurEngine();
+		engine.setParallel(parallel);
+		boxBlur = KernelNxN.createBoxBlur("box blur", radius);
+		boxBlur.setParallel(parallel);
+
+		int[] dimension = FilterBenchmark.parseSize(size);
+		width = dimension[0];
+		height = dimension[1];
+		srcPixels = FilterBenchmark.randomPixels(width, height, 2);
+		dstPixels = new int[width * height];
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		engine.release();
+	}
+
+	@Benchmark
+	public int[] blurEngine()
+	{
+		engine.blur(srcPixels, dstPixels, width, height, radius, true);
+		return dstPixels;
+	}
+
+	@Benchmark
+	public int[] boxBlurKernel()
+	{
+		boxBlur.apply(srcPixels, dstPixels, width, height, true);
+		return dstPixels;
+	}
+}
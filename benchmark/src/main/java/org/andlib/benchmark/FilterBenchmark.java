@@ -0,0 +1,135 @@
+package org.andlib.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import outsourced.image.filter.base.FilterBase;
+import outsourced.image.filter.kernel.PixelKernel;
+
+/**
+ * kernels of preset filters (1x1, IC, 3x3 and 5x5) applied to ARGB pixels
+ * <br>
+ * <br>
+ * kernels are taken from the preset filter classes (so their matrices are not duplicated here),
+ * and applied directly, as {@link FilterBase#filter(int[], int[], int, int, boolean)} does without logging.
+ *
+ * @author meinside@gmail.com
+ * @since 26.10.18.
+ *
+ * last update 26.10.18.
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+@State(Scope.Thread)
+public class FilterBenchmark
+{
+	@Param({
+		"filter1x1.Filter1x1ContrastLess",
+		"filter1x1.Filter1x1ContrastMore",
+		"filter1x1.Filter1x1Darker",
+		"filter1x1.Filter1x1Lighter",
+		"filter1x1.Filter1x1Negative",
+		"filteric.FilterICBRG2RGB",
+		"filteric.FilterICGBR2RGB",
+		"filteric.FilterICMonochrome",
+		"filteric.FilterICWhiteAlpha",
+		"filter3x3.Filter3x3Contour",
+		"filter3x3.Filter3x3EdgeDetect",
+		"filter3x3.Filter3x3EdgeDetectSoft",
+		"filter3x3.Filter3x3Emboss",
+		"filter3x3.Filter3x3FindEdges",
+		"filter3x3.Filter3x3Sharpen",
+		"filter3x3.Filter3x3SharpenStrong",
+		"filter3x3.Filter3x3Smoothen",
+		"filter5x5.Filter5x5Blur",
+		"filter5x5.Filter5x5Contour",
+		"filter5x5.Filter5x5ContrastLess",
+		"filter5x5.Filter5x5ContrastMore",
+		"filter5x5.Filter5x5Darker",
+		"filter5x5.Filter5x5EdgeDetect",
+		"filter5x5.Filter5x5EdgeDetectSoft",
+		"filter5x5.Filter5x5Emboss",
+		"filter5x5.Filter5x5FindEdges",
+		"filter5x5.Filter5x5Lighter",
+		"filter5x5.Filter5x5Negative",
+		"filter5x5.Filter5x5Sharpen",
+		"filter5x5.Filter5x5SharpenStrong",
+		"filter5x5.Filter5x5Smoothen",
+	})
+	public String filter;	//class name under outsourced.image.filter
+
+	@Param({"640x480", "1920x1080", "4000x3000"})
+	public String size;
+
+	@Param({"true"})
+	public boolean alpha;
+
+	private PixelKernel kernel;
+	private int width;
+	private int height;
+	private int[] srcPixels;
+	private int[] dstPixels;
+
+	@Setup
+	public void setUp() throws Exception
+	{
+		FilterBase preset = (FilterBase)Class.forName("outsourced.image.filter." + filter).newInstance();
+		kernel = preset.getKernel();
+
+		int[] dimension = parseSize(size);
+		width = dimension[0];
+		height = dimension[1];
+		srcPixels = randomPixels(width, height, 1);
+		dstPixels = new int[width * height];
+	}
+
+	@Benchmark
+	public int[] apply()
+	{
+		kernel.apply(srcPixels, dstPixels, width, height, alpha);
+		return dstPixels;
+	}
+
+	/**
+	 *
+	 * @param size "WIDTHxHEIGHT"
+	 * @return {width, height}
+	 */
+	static int[] parseSize(String size)
+	{
+		String[] tokens = size.split("x");
+		return new int[]{Integer.parseInt(tokens[0]), Integer.parseInt(tokens[1])};
+	}
+
+	/**
+	 *
+	 * @param width
+	 * @param height
+	 * @param seed
+	 * @return ARGB pixels of random colors (and alpha values)
+	 */
+	static int[] randomPixels(int width, int height, long seed)
+	{
+		Random random = new Random(seed);
+		int[] pixels = new int[width * height];
+		for(int i=0; i<pixels.length; i++)
+			pixels[i] = random.nextInt();
+		return pixels;
+	}
+}
@@ -1,40 +1,83 @@
 package org.andlib.helpers;
 
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
 
+import org.andlib.helpers.image.ImageUtility;
+import org.andlib.http.SharedHttpClient;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Color;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
-import android.net.http.AndroidHttpClient;
 import android.os.AsyncTask;
+import android.os.Build;
+import android.util.DisplayMetrics;
+import android.view.ViewGroup;
 import android.widget.ImageView;
 
 /**
  * helper task for downloading a bitmap image from http and setting it to given image view asynchronously  
  * <br>
  * <br>
+ * images are looked up in {@link ImageCache} first: memory on the calling thread, then disk on the background,
+ * and downloaded only when not cached (by default, a memory-only cache of 1/8 of max heap size is used)
+ * <br>
+ * <br>
+ * images are decoded for the size of target image views (subsampled, and in RGB_565 if opaque),
+ * so memory per image scales with the view, not with the source image
+ * <br>
+ * <br>
+ * downloads share one {@link SharedHttpClient}, so connections to the same host are kept alive and reused
+ * <br>
+ * <br>
+ * requests for an url already being downloaded are attached to that download (instead of starting another one),
+ * and get the same bitmap when it finishes. the download is cancelled only when all attached requests are cancelled
+ * (eg. their image views are reused for other urls).
+ * <br>
+ * <br>
+ * downloads run on a shared {@link ImageLoaderExecutor}: newest requests first, and requests demoted
+ * (eg. for views scrolled off the screen) after all the others. it can be paused during flings.
+ * (on API level below 11, downloads run on the default executor of AsyncTask, without priorities)
+ * <br>
+ * <br>
+ * {@link ImageDownloadListener} is called on the main thread.
+ * <br>
+ * <br>
  * <b>referenced</b>: http://android-developers.blogspot.com/2010/07/multithreading-for-performance.html
  * 
  * @author meinside@gmail.com
  * @since 10.11.12.
  * 
- * last update: 10.11.12.
+ * last update: 26.10.18.
  * 
  */
 public class AsyncImageDownloadTask extends AsyncTask<String, Void, Bitmap>
 {
 	private String url;
+	private int targetWidth = 0;
+	private int targetHeight = 0;
 	private final WeakReference<ImageView> imageViewReference;
 	private ImageDownloadListener listener;
 
+	//for coalescing requests of the same url (accessed on the main thread)
+	private AsyncImageDownloadTask owner = null;	//task which downloads for this request
+	private ArrayList<AsyncImageDownloadTask> requests = null;	//requests attached to this task (if this is an owner)
+	private volatile HttpGet currentRequest = null;
+	private int priority = ImageLoaderExecutor.PRIORITY_NORMAL;	//of this request
+
+	private static ImageCache imageCache = null;
+	private static ImageLoaderExecutor loader = null;
+	private static HashMap<String, AsyncImageDownloadTask> inFlight = new HashMap<String, AsyncImageDownloadTask>();	//url and target size: owner
+
 	/**
 	 * 
 	 * @param imageView
@@ -46,25 +89,272 @@ public class AsyncImageDownloadTask extends AsyncTask<String, Void, Bitmap>
 	}
 
 	/**
+	 * download an image for the size of given image view
+	 * (or its layout size, or the screen size if not measured yet)
 	 * 
 	 * @param url
 	 * @param imageView
 	 */
 	public void download(String url, ImageView imageView)
 	{
+		int width = imageView.getWidth();
+		int height = imageView.getHeight();
+		if(width <= 0 || height <= 0)
+		{
+			ViewGroup.LayoutParams params = imageView.getLayoutParams();
+			DisplayMetrics metrics = imageView.getResources().getDisplayMetrics();
+			width = (params != null && params.width > 0) ? params.width : metrics.widthPixels;
+			height = (params != null && params.height > 0) ? params.height : metrics.heightPixels;
+		}
+		download(url, imageView, width, height);
+	}
+
+	/**
+	 * 
+	 * @param url
+	 * @param imageView
+	 * @param targetWidth image is decoded not smaller than this (0 for no limit)
+	 * @param targetHeight image is decoded not smaller than this (0 for no limit)
+	 */
+	public void download(String url, ImageView imageView, int targetWidth, int targetHeight)
+	{
+		targetWidth = Math.max(0, targetWidth);
+		targetHeight = Math.max(0, targetHeight);
+
+		Bitmap cached = getImageCache().getFromMemory(url, targetWidth, targetHeight);
+		if(cached != null)
+		{
+			AsyncImageDownloadTask bitmapDownloaderTask = getBitmapDownloaderTask(imageView);
+			if(bitmapDownloaderTask != null)
+				bitmapDownloaderTask.detach();
+			imageView.setImageBitmap(cached);
+
+			if(listener != null)
+				listener.imageDownloaded(url, cached);	//call back
+			return;
+		}
+
 		if(cancelPotentialDownload(url, imageView))
 		{
 			AsyncImageDownloadTask task = new AsyncImageDownloadTask(imageView, listener);
+			task.url = url;
+			task.targetWidth = targetWidth;
+			task.targetHeight = targetHeight;
 			DownloadedDrawable downloadedDrawable = new DownloadedDrawable(task);
 			imageView.setImageDrawable(downloadedDrawable);
-			task.execute(url);
+
+			AsyncImageDownloadTask downloading = inFlight.get(task.getKey());
+			if(downloading != null)
+			{
+				//attach to the download in progress
+				task.owner = downloading;
+				downloading.requests.add(task);
+			}
+			else
+			{
+				task.owner = task;
+				task.requests = new ArrayList<AsyncImageDownloadTask>();
+				task.requests.add(task);
+				inFlight.put(task.getKey(), task);
+				if(usesLoaderExecutor())
+					task.executeOnExecutor(getLoaderExecutor().withPriority(task, task.priority), url);
+				else
+					task.execute(url);
+			}
+		}
+	}
+
+	/**
+	 * detach this request from its download (which is cancelled when no request is attached anymore)
+	 */
+	private void detach()
+	{
+		if(owner == null)
+			return;
+
+		AsyncImageDownloadTask downloading = owner;
+		owner = null;
+		downloading.requests.remove(this);
+		if(downloading.requests.isEmpty())
+		{
+			if(inFlight.get(downloading.getKey()) == downloading)
+				inFlight.remove(downloading.getKey());
+
+			if(usesLoaderExecutor())
+				getLoaderExecutor().remove(downloading);
+			downloading.cancel(true);
+			HttpGet request = downloading.currentRequest;
+			if(request != null)
+				request.abort();	//(interrupt does not stop blocking reads)
 		}
+		else
+		{
+			downloading.updatePriority();
+		}
+	}
+
+	/**
+	 * queue the download by the highest priority of its attached requests (if not started yet)
+	 */
+	private void updatePriority()
+	{
+		int highest = Integer.MIN_VALUE;
+		for(AsyncImageDownloadTask request: requests)
+			highest = Math.max(highest, request.priority);
+		if(usesLoaderExecutor())
+			getLoaderExecutor().setPriority(this, highest);
+	}
+
+	/**
+	 * change priority of the request for given image view (eg. ImageLoaderExecutor.PRIORITY_LOW when it scrolled off the screen)
+	 * <br>
+	 * (should be called on the main thread)
+	 * 
+	 * @param imageView
+	 * @param priority
+	 * @return false if no download is in progress for given image view
+	 */
+	public static boolean setDownloadPriority(ImageView imageView, int priority)
+	{
+		AsyncImageDownloadTask request = getBitmapDownloaderTask(imageView);
+		if(request == null || request.owner == null)
+			return false;
+
+		request.priority = priority;
+		request.owner.updatePriority();
+		return true;
+	}
+
+	/**
+	 * demote the request for given image view, so that it is downloaded after all the others
+	 * <br>
+	 * (should be called on the main thread)
+	 * 
+	 * @param imageView
+	 * @return false if no download is in progress for given image view
+	 */
+	public static boolean demoteDownload(ImageView imageView)
+	{
+		return setDownloadPriority(imageView, ImageLoaderExecutor.PRIORITY_LOW);
+	}
+
+	/**
+	 * cancel the request for given image view (eg. when the view is recycled)
+	 * <br>
+	 * download is cancelled only when no other view is waiting for it.
+	 * (should be called on the main thread)
+	 * 
+	 * @param imageView
+	 * @return false if no download is in progress for given image view
+	 */
+	public static boolean cancelDownload(ImageView imageView)
+	{
+		AsyncImageDownloadTask request = getBitmapDownloaderTask(imageView);
+		if(request == null || request.owner == null)
+			return false;
+
+		request.detach();
+		return true;
+	}
+
+	/**
+	 * do not start queued downloads until {@link #resumeDownloads()} (eg. while a list is being flung)
+	 * <br>
+	 * (no effect below API level 11, where downloads run on the default executor of AsyncTask)
+	 */
+	public static void pauseDownloads()
+	{
+		if(usesLoaderExecutor())
+			getLoaderExecutor().pause();
+	}
+
+	/**
+	 * start queued downloads again
+	 */
+	public static void resumeDownloads()
+	{
+		if(usesLoaderExecutor())
+			getLoaderExecutor().resume();
+	}
+
+	/**
+	 * 
+	 * @param executor executor for downloads (null for the default one)
+	 */
+	public static synchronized void setLoaderExecutor(ImageLoaderExecutor executor)
+	{
+		loader = executor;
+	}
+
+	/**
+	 * 
+	 * @return executor for downloads (a new one if the previous one was shut down)
+	 */
+	public static synchronized ImageLoaderExecutor getLoaderExecutor()
+	{
+		if(loader == null || loader.isShutdown())
+			loader = new ImageLoaderExecutor();
+		return loader;
+	}
+
+	/**
+	 * 
+	 * @return false below API level 11 (AsyncTask.executeOnExecutor() is not available, so the loader executor is not used at all)
+	 */
+	private static boolean usesLoaderExecutor()
+	{
+		return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+	}
+
+	/**
+	 * 
+	 * @return key for coalescing requests
+	 */
+	private String getKey()
+	{
+		return ImageCache.getMemoryKey(url, targetWidth, targetHeight);
+	}
+
+	/**
+	 * 
+	 * @return number of downloads in progress (requests of the same url are counted once)
+	 */
+	public static int getDownloadCount()
+	{
+		return inFlight.size();
+	}
+
+	/**
+	 * 
+	 * @param cache cache for downloaded images (null for the default one)
+	 */
+	public static synchronized void setImageCache(ImageCache cache)
+	{
+		imageCache = cache;
+	}
+
+	/**
+	 * 
+	 * @return cache for downloaded images
+	 */
+	public static synchronized ImageCache getImageCache()
+	{
+		if(imageCache == null)
+			imageCache = new ImageCache(Runtime.getRuntime().maxMemory() / 8);
+		return imageCache;
 	}
 
 	@Override
 	protected Bitmap doInBackground(String... params)
 	{
-		return downloadBitmap(params[0]);
+		Bitmap bitmap = getImageCache().getFromDisk(params[0], targetWidth, targetHeight);
+		if(bitmap == null)
+		{
+			if(isCancelled())
+				return null;
+			bitmap = downloadBitmap(params[0]);
+		}
+		return bitmap;
 	}
 
 	@Override
@@ -75,24 +365,58 @@ public class AsyncImageDownloadTask extends AsyncTask<String, Void, Bitmap>
 			bitmap = null;
 		}
 
-		if(imageViewReference != null)
+		deliver(bitmap);
+	}
+
+	@Override
+	protected void onCancelled()
+	{
+		//requests still attached (eg. when the loader executor was shut down) are told it failed
+		deliver(null);
+	}
+
+	/**
+	 * finish this download, and deliver its result to all attached requests
+	 * 
+	 * @param bitmap null on failure or cancellation
+	 */
+	private void deliver(Bitmap bitmap)
+	{
+		if(inFlight.get(getKey()) == this)
+			inFlight.remove(getKey());
+
+		//deliver to all attached requests
+		ArrayList<AsyncImageDownloadTask> attached = new ArrayList<AsyncImageDownloadTask>(requests);
+		requests.clear();
+		for(AsyncImageDownloadTask request: attached)
 		{
-			ImageView imageView = imageViewReference.get();
+			request.owner = null;
+
+			ImageView imageView = request.imageViewReference.get();
 			AsyncImageDownloadTask bitmapDownloaderTask = getBitmapDownloaderTask(imageView);
 
 			// Change bitmap only if this process is still associated with it
-			if(this == bitmapDownloaderTask)
+			if(request == bitmapDownloaderTask)
 			{
 				imageView.setImageBitmap(bitmap);
 			}
+
+			if(request.listener != null)
+			{
+				if(bitmap != null)
+					request.listener.imageDownloaded(url, bitmap);	//call back
+				else
+					request.listener.imageDownloadFailed(url);	//call back
+			}
 		}
 	}
 
+
 	/**
 	 * 
 	 * @param url
 	 * @param imageView
-	 * @return false if the same url is already being downloaded
+	 * @return false if the same url is already being downloaded (for given image view)
 	 */
 	private boolean cancelPotentialDownload(String url, ImageView imageView)
 	{
@@ -101,12 +425,18 @@ public class AsyncImageDownloadTask extends AsyncTask<String, Void, Bitmap>
 		if(bitmapDownloaderTask != null)
 		{
 			String bitmapUrl = bitmapDownloaderTask.url;
-			if(bitmapUrl == null || !bitmapUrl.equals(url))
+			if(bitmapUrl == null || !bitmapUrl.equals(url) || bitmapDownloaderTask.owner == null)
 			{
-				bitmapDownloaderTask.cancel(true);
+				bitmapDownloaderTask.detach();
 			}
 			else
 			{
+				//shown again while being downloaded
+				if(bitmapDownloaderTask.priority != ImageLoaderExecutor.PRIORITY_NORMAL)
+				{
+					bitmapDownloaderTask.priority = ImageLoaderExecutor.PRIORITY_NORMAL;
+					bitmapDownloaderTask.owner.updatePriority();
+				}
 				return false;
 			}
 		}
@@ -114,31 +444,47 @@ public class AsyncImageDownloadTask extends AsyncTask<String, Void, Bitmap>
 	}
 
 	/**
+	 * download, decode (for the target size), and cache an image
 	 * 
 	 * @param url
-	 * @return
+	 * @return null on error
 	 */
 	private Bitmap downloadBitmap(String url)
 	{
-		final AndroidHttpClient client = AndroidHttpClient.newInstance("Android");
+		final HttpClient client = SharedHttpClient.getClient();
 		final HttpGet getRequest = new HttpGet(url);
+		currentRequest = getRequest;
 		try
 		{
 			HttpResponse response = client.execute(getRequest);
 			final int statusCode = response.getStatusLine().getStatusCode();
-			if(statusCode == HttpStatus.SC_OK)
+			final HttpEntity entity = response.getEntity();
+			if(statusCode != HttpStatus.SC_OK)
+			{
+				Logger.e("http status: " + statusCode + " (" + url + ")");
+				if(entity != null)
+					entity.consumeContent();	//release the connection to the pool
+			}
+			else
 			{
-				final HttpEntity entity = response.getEntity();
 				if(entity != null)
 				{
 					InputStream inputStream = null;
 					try
 					{
 						inputStream = entity.getContent();
-						final Bitmap bitmap = BitmapFactory.decodeStream(inputStream);
-						
-						if(listener != null)
-							listener.imageDownloaded(url, bitmap);	//call back
+
+						//keep encoded bytes for the disk cache
+						ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(0, (int)entity.getContentLength()));
+						byte[] buffer = new byte[8192];
+						int read;
+						while((read = inputStream.read(buffer)) != -1)
+							bytes.write(buffer, 0, read);
+						byte[] data = bytes.toByteArray();
+
+						final Bitmap bitmap = ImageUtility.decodeSampledBitmap(data, targetWidth, targetHeight);
+						if(bitmap != null)
+							getImageCache().put(url, data, bitmap, targetWidth, targetHeight);
 						
 						return bitmap;
 					}
@@ -157,18 +503,12 @@ public class AsyncImageDownloadTask extends AsyncTask<String, Void, Bitmap>
 		{
 			// Could provide a more explicit error message for IOException or
 			// IllegalStateException
-			getRequest.abort();
+			getRequest.abort();	//(also releases the connection)
 		}
 		finally
 		{
-			if(client != null)
-			{
-				client.close();
-			}
+			currentRequest = null;
 		}
-		
-		if(listener != null)
-			listener.imageDownloadFailed(url);	//call back
 
 		return null;
 	}
@@ -178,7 +518,7 @@ public class AsyncImageDownloadTask extends AsyncTask<String, Void, Bitmap>
 	 * @param imageView
 	 * @return
 	 */
-	private AsyncImageDownloadTask getBitmapDownloaderTask(ImageView imageView)
+	private static AsyncImageDownloadTask getBitmapDownloaderTask(ImageView imageView)
 	{
 		if(imageView != null)
 		{
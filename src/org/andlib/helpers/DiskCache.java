@@ -0,0 +1,528 @@
+package org.andlib.helpers;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * size-capped LRU cache of byte arrays in files of a directory, with a journal
+ * <br>
+ * <br>
+ * - each entry is a file named after md5 sum of its key<br>
+ * - accesses are appended to a journal file, so the order of least recently used entries survives restarts<br>
+ * - on opening, the journal is replayed: entries whose files are missing or broken are dropped,
+ *   and files not in the journal (eg. left by an interrupted write) are deleted<br>
+ * - when total size exceeds the limit, least recently used entries are deleted first
+ * <br>
+ * <br>
+ * journal lines are: 'PUT name size', 'READ name', or 'REMOVE name'
+ *
+ * @author meinside@gmail.com
+ * @since 26.10.18.
+ *
+ * last update 26.10.18.
+ *
+ */
+public class DiskCache
+{
+	public static final String JOURNAL_FILENAME = "journal";
+	public static final String JOURNAL_HEADER = "org.andlib.helpers.DiskCache 1";
+
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final int MIN_REDUNDANT_JOURNAL_LINES = 2000;
+
+	private File directory;
+	private long maxBytes;
+	private long bytes = 0;
+	private LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>(16, 0.75f, true);	//name: size
+
+	private Writer journal = null;
+	private int journalLines = 0;
+
+	private int tempCount = 0;
+	private long putCount = 0;	//for telling whether an entry was replaced between locked sections
+
+	/**
+	 *
+	 * @param directory directory only for this cache (eg. new File(context.getCacheDir(), "images"))
+	 * @param maxBytes limit of cached files (in bytes)
+	 */
+	public DiskCache(File directory, long maxBytes)
+	{
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+
+		if(directory == null || !(directory.isDirectory() || directory.mkdirs()))
+		{
+			Logger.e("cache directory not available: " + directory);
+			return;
+		}
+
+		synchronized(this)
+		{
+			readJournal();
+			removeUnknownFiles();
+			rebuildJournal();
+			trim();
+		}
+	}
+
+	/**
+	 * @return false if the cache directory or journal is not available (then nothing is cached)
+	 */
+	public synchronized boolean isAvailable()
+	{
+		return journal != null;
+	}
+
+	/**
+	 *
+	 * @param key
+	 * @return cached bytes, or null if not cached
+	 */
+	public byte[] get(String key)
+	{
+		String name = getName(key);
+		File file;
+		long generation;
+		synchronized(this)
+		{
+			if(journal == null || entries.get(name) == null)
+				return null;
+			file = new File(directory, name);
+			generation = putCount;
+			appendJournal("READ " + name);
+		}
+
+		//(file can be evicted while reading, then it is just a miss)
+		byte[] data = readFile(file);
+		if(data == null)
+		{
+			synchronized(this)
+			{
+				//(not if it was put again meanwhile: the new file is not the one which failed)
+				if(putCount == generation)
+					removeEntry(name);
+			}
+		}
+		return data;
+	}
+
+	/**
+	 *
+	 * @param key
+	 * @param data
+	 * @return false on error
+	 */
+	public boolean put(String key, byte[] data)
+	{
+		if(key == null || data == null)
+		{
+			Logger.e("parameter error (key or data null)");
+			return false;
+		}
+
+		String name = getName(key);
+		File temp;
+		synchronized(this)
+		{
+			if(journal == null || data.length > maxBytes)
+				return false;
+			temp = new File(directory, name + "." + (tempCount++) + TEMP_SUFFIX);
+		}
+
+		//write to a temporary file first, so readers never see a partial file
+		if(!writeFile(temp, data))
+		{
+			temp.delete();
+			return false;
+		}
+
+		synchronized(this)
+		{
+			File file = new File(directory, name);
+			Long previous = entries.remove(name);
+			if(previous != null)
+				bytes -= previous;
+			file.delete();
+
+			if(journal == null || !temp.renameTo(file))
+			{
+				Logger.e("failed to move cache file: " + temp);
+				temp.delete();
+				if(previous != null)
+					appendJournal("REMOVE " + name);
+				return false;
+			}
+
+			entries.put(name, (long)data.length);
+			bytes += data.length;
+			putCount ++;
+			appendJournal("PUT " + name + " " + data.length);
+
+			trim();
+		}
+		return true;
+	}
+
+	/**
+	 *
+	 * @param key
+	 * @return false if not cached
+	 */
+	public synchronized boolean remove(String key)
+	{
+		return removeEntry(getName(key));
+	}
+
+	/**
+	 * delete all cached files
+	 */
+	public synchronized void clear()
+	{
+		for(String name: entries.keySet())
+			new File(directory, name).delete();
+		entries.clear();
+		bytes = 0;
+
+		if(journal != null)
+			rebuildJournal();
+	}
+
+	/**
+	 * close the journal (nothing is cached afterwards)
+	 */
+	public synchronized void close()
+	{
+		if(journal != null)
+		{
+			try
+			{
+				journal.close();
+			}
+			catch(IOException e)
+			{
+				Logger.e(e.toString());
+			}
+			journal = null;
+		}
+	}
+
+	/**
+	 * @return bytes of cached files
+	 */
+	public synchronized long getBytes()
+	{
+		return bytes;
+	}
+
+	/**
+	 * @return limit of cached files (in bytes)
+	 */
+	public synchronized long getMaxBytes()
+	{
+		return maxBytes;
+	}
+
+	/**
+	 * @return number of cached entries
+	 */
+	public synchronized int getCount()
+	{
+		return entries.size();
+	}
+
+	/**
+	 *
+	 * @param key
+	 * @return name of cache file
+	 */
+	private static String getName(String key)
+	{
+		return StringCodec.md5sum(key);
+	}
+
+	/**
+	 * restore entries from the journal
+	 */
+	private void readJournal()
+	{
+		File file = new File(directory, JOURNAL_FILENAME);
+		if(!file.exists())
+			return;
+
+		BufferedReader reader = null;
+		try
+		{
+			reader = new BufferedReader(new FileReader(file));
+			if(!JOURNAL_HEADER.equals(reader.readLine()))
+			{
+				Logger.e("unknown journal, cache is reset: " + file);
+				return;
+			}
+
+			String line;
+			while((line = reader.readLine()) != null)
+			{
+				String[] tokens = line.split(" ");
+				if(tokens.length == 3 && "PUT".equals(tokens[0]))
+				{
+					entries.put(tokens[1], Long.parseLong(tokens[2]));
+				}
+				else if(tokens.length == 2 && "READ".equals(tokens[0]))
+				{
+					entries.get(tokens[1]);	//(moves it to the most recently used)
+				}
+				else if(tokens.length == 2 && "REMOVE".equals(tokens[0]))
+				{
+					entries.remove(tokens[1]);
+				}
+				else
+				{
+					break;	//truncated by a crash
+				}
+			}
+		}
+		catch(Exception e)
+		{
+			Logger.e(e.toString());
+		}
+		finally
+		{
+			if(reader != null)
+			{
+				try
+				{
+					reader.close();
+				}
+				catch(IOException e)
+				{
+					Logger.e(e.toString());
+				}
+			}
+		}
+
+		//drop entries whose files are missing or of different sizes
+		bytes = 0;
+		Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+		while(iterator.hasNext())
+		{
+			Map.Entry<String, Long> entry = iterator.next();
+			File entryFile = new File(directory, entry.getKey());
+			if(entryFile.length() != entry.getValue())
+			{
+				entryFile.delete();
+				iterator.remove();
+			}
+			else
+			{
+				bytes += entry.getValue();
+			}
+		}
+	}
+
+	/**
+	 * delete files which are not entries (nor the journal)
+	 */
+	private void removeUnknownFiles()
+	{
+		HashSet<String> known = new HashSet<String>(entries.keySet());
+		known.add(JOURNAL_FILENAME);
+
+		File[] files = directory.listFiles();
+		if(files == null)
+			return;
+		for(File file: files)
+		{
+			if(!known.contains(file.getName()))
+				file.delete();
+		}
+	}
+
+	/**
+	 * write a compact journal of current entries (least recently used first), and reopen it for appending
+	 */
+	private void rebuildJournal()
+	{
+		close();
+
+		File file = new File(directory, JOURNAL_FILENAME);
+		File temp = new File(directory, JOURNAL_FILENAME + TEMP_SUFFIX);
+		Writer writer = null;
+		try
+		{
+			writer = new FileWriter(temp);
+			writer.write(JOURNAL_HEADER + "\n");
+			for(Map.Entry<String, Long> entry: entries.entrySet())
+				writer.write("PUT " + entry.getKey() + " " + entry.getValue() + "\n");
+			writer.close();
+			writer = null;
+
+			file.delete();
+			if(!temp.renameTo(file))
+				throw new IOException("failed to move journal: " + temp);
+
+			journal = new FileWriter(file, true);
+			journalLines = entries.size();
+		}
+		catch(IOException e)
+		{
+			Logger.e(e.toString());
+			if(writer != null)
+			{
+				try
+				{
+					writer.close();
+				}
+				catch(IOException ce)
+				{
+					Logger.e(ce.toString());
+				}
+			}
+			temp.delete();
+		}
+	}
+
+	/**
+	 *
+	 * @param line
+	 */
+	private void appendJournal(String line)
+	{
+		if(journal == null)
+			return;
+
+		try
+		{
+			journal.write(line + "\n");
+			journal.flush();
+			journalLines ++;
+		}
+		catch(IOException e)
+		{
+			Logger.e(e.toString());
+		}
+
+		//compact when most lines are redundant
+		if(journalLines >= MIN_REDUNDANT_JOURNAL_LINES && journalLines >= entries.size() * 2)
+			rebuildJournal();
+	}
+
+	/**
+	 *
+	 * @param name
+	 * @return false if not an entry
+	 */
+	private boolean removeEntry(String name)
+	{
+		Long size = entries.remove(name);
+		if(size == null)
+			return false;
+
+		bytes -= size;
+		new File(directory, name).delete();
+		appendJournal("REMOVE " + name);
+		return true;
+	}
+
+	/**
+	 * delete least recently used entries until they fit in the limit
+	 */
+	private void trim()
+	{
+		while(bytes > maxBytes && !entries.isEmpty())
+			removeEntry(entries.keySet().iterator().next());
+	}
+
+	/**
+	 *
+	 * @param file
+	 * @return null on error
+	 */
+	private static byte[] readFile(File file)
+	{
+		InputStream input = null;
+		try
+		{
+			input = new FileInputStream(file);
+			ByteArrayOutputStream output = new ByteArrayOutputStream((int)file.length());
+			byte[] buffer = new byte[8192];
+			int read;
+			while((read = input.read(buffer)) != -1)
+				output.write(buffer, 0, read);
+			return output.toByteArray();
+		}
+		catch(IOException e)
+		{
+			Logger.e(e.toString());
+			return null;
+		}
+		finally
+		{
+			if(input != null)
+			{
+				try
+				{
+					input.close();
+				}
+				catch(IOException e)
+				{
+					Logger.e(e.toString());
+				}
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @param file
+	 * @param data
+	 * @return false on error
+	 */
+	private static boolean writeFile(File file, byte[] data)
+	{
+		FileOutputStream output = null;
+		try
+		{
+			output = new FileOutputStream(file);
+			output.write(data);
+			return true;
+		}
+		catch(IOException e)
+		{
+			Logger.e(e.toString());
+			return false;
+		}
+		finally
+		{
+			if(output != null)
+			{
+				try
+				{
+					output.close();
+				}
+				catch(IOException e)
+				{
+					Logger.e(e.toString());
+				}
+			}
+		}
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return "entries: " + entries.size() + ", " + bytes + "/" + maxBytes + " bytes";
+	}
+}
@@ -0,0 +1,312 @@
+package org.andlib.helpers;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.andlib.helpers.image.ImageUtility;
+
+import android.graphics.Bitmap;
+
+/**
+ * two-level cache of downloaded images: decoded bitmaps in memory, and their encoded bytes on disk
+ * <br>
+ * <br>
+ * - memory level is bounded by the total bytes of bitmaps, and least recently used ones are evicted first<br>
+ * - disk level is a {@link DiskCache}, so it survives restarts<br>
+ * - bitmaps are decoded for target sizes (see {@link ImageUtility#decodeSampledBitmap(byte[], int, int)}),
+ *   so an image is kept in memory once per target size, but on disk only once<br>
+ * - each lookup ends as a memory hit, a disk hit, or a miss, and they are counted
+ * <br>
+ * <br>
+ * cached bitmaps are shared (eg. by image views), so they should not be recycled or modified.
+ *
+ * @author meinside@gmail.com
+ * @since 26.10.18.
+ *
+ * last update 26.10.18.
+ *
+ */
+public class ImageCache
+{
+	private long maxMemoryBytes;
+	private long memoryBytes = 0;
+	private LinkedHashMap<String, Bitmap> memory = new LinkedHashMap<String, Bitmap>(16, 0.75f, true);
+
+	private DiskCache disk = null;
+
+	private long memoryHits = 0;
+	private long diskHits = 0;
+	private long misses = 0;
+
+	/**
+	 * memory only
+	 *
+	 * @param maxMemoryBytes limit of bitmaps in memory (in bytes)
+	 */
+	public ImageCache(long maxMemoryBytes)
+	{
+		this.maxMemoryBytes = maxMemoryBytes;
+	}
+
+	/**
+	 *
+	 * @param maxMemoryBytes limit of bitmaps in memory (in bytes)
+	 * @param diskDirectory directory only for this cache (eg. new File(context.getCacheDir(), "images"))
+	 * @param maxDiskBytes limit of files on disk (in bytes)
+	 */
+	public ImageCache(long maxMemoryBytes, File diskDirectory, long maxDiskBytes)
+	{
+		this(maxMemoryBytes);
+
+		disk = new DiskCache(diskDirectory, maxDiskBytes);
+		if(!disk.isAvailable())
+			disk = null;
+	}
+
+	/**
+	 *
+	 * @param url
+	 * @param targetWidth (0 for no limit)
+	 * @param targetHeight (0 for no limit)
+	 * @return key of memory level
+	 */
+	public static String getMemoryKey(String url, int targetWidth, int targetHeight)
+	{
+		return url + "|" + Math.max(0, targetWidth) + "x" + Math.max(0, targetHeight);
+	}
+
+	/**
+	 * look up memory only (fast enough for the main thread)
+	 *
+	 * @param url
+	 * @return cached bitmap of full size, or null (not counted as a miss, as disk is not looked up yet)
+	 */
+	public Bitmap getFromMemory(String url)
+	{
+		return getFromMemory(url, 0, 0);
+	}
+
+	/**
+	 * look up memory only (fast enough for the main thread)
+	 *
+	 * @param url
+	 * @param targetWidth (0 for no limit)
+	 * @param targetHeight (0 for no limit)
+	 * @return cached bitmap decoded for given target size, or null (not counted as a miss, as disk is not looked up yet)
+	 */
+	public synchronized Bitmap getFromMemory(String url, int targetWidth, int targetHeight)
+	{
+		String key = getMemoryKey(url, targetWidth, targetHeight);
+		Bitmap bitmap = memory.get(key);
+		if(bitmap == null)
+			return null;
+
+		if(bitmap.isRecycled())
+		{
+			memory.remove(key);
+			memoryBytes -= getByteCount(bitmap);
+			return null;
+		}
+
+		memoryHits ++;
+		return bitmap;
+	}
+
+	/**
+	 * look up disk (after a memory miss, on a background thread), and keep the decoded bitmap in memory
+	 *
+	 * @param url
+	 * @return decoded bitmap of full size, or null (counted as a miss)
+	 */
+	public Bitmap getFromDisk(String url)
+	{
+		return getFromDisk(url, 0, 0);
+	}
+
+	/**
+	 * look up disk (after a memory miss, on a background thread), and keep the decoded bitmap in memory
+	 *
+	 * @param url
+	 * @param targetWidth (0 for no limit)
+	 * @param targetHeight (0 for no limit)
+	 * @return bitmap decoded for given target size, or null (counted as a miss)
+	 */
+	public Bitmap getFromDisk(String url, int targetWidth, int targetHeight)
+	{
+		Bitmap bitmap = null;
+		if(disk != null)
+		{
+			byte[] data = disk.get(url);
+			if(data != null)
+			{
+				bitmap = ImageUtility.decodeSampledBitmap(data, targetWidth, targetHeight);
+				if(bitmap == null)
+					disk.remove(url);	//broken
+			}
+		}
+
+		synchronized(this)
+		{
+			if(bitmap == null)
+			{
+				misses ++;
+				return null;
+			}
+
+			diskHits ++;
+			putInMemory(getMemoryKey(url, targetWidth, targetHeight), bitmap);
+		}
+		return bitmap;
+	}
+
+	/**
+	 * keep a downloaded image (decoded in full size) in both levels
+	 *
+	 * @param url
+	 * @param data encoded bytes (null for memory only)
+	 * @param bitmap decoded from data
+	 */
+	public void put(String url, byte[] data, Bitmap bitmap)
+	{
+		put(url, data, bitmap, 0, 0);
+	}
+
+	/**
+	 * keep a downloaded image in both levels
+	 *
+	 * @param url
+	 * @param data encoded bytes (null for memory only)
+	 * @param bitmap decoded from data for given target size
+	 * @param targetWidth (0 for no limit)
+	 * @param targetHeight (0 for no limit)
+	 */
+	public void put(String url, byte[] data, Bitmap bitmap, int targetWidth, int targetHeight)
+	{
+		if(url == null || bitmap == null)
+		{
+			Logger.e("parameter error (url or bitmap null)");
+			return;
+		}
+
+		synchronized(this)
+		{
+			putInMemory(getMemoryKey(url, targetWidth, targetHeight), bitmap);
+		}
+
+		if(disk != null && data != null)
+			disk.put(url, data);
+	}
+
+	/**
+	 * remove all cached images (in memory and on disk)
+	 */
+	public void clear()
+	{
+		synchronized(this)
+		{
+			memory.clear();
+			memoryBytes = 0;
+		}
+
+		if(disk != null)
+			disk.clear();
+	}
+
+	/**
+	 * @return bytes of bitmaps in memory
+	 */
+	public synchronized long getMemoryBytes()
+	{
+		return memoryBytes;
+	}
+
+	/**
+	 * @return bytes of files on disk (0 without disk level)
+	 */
+	public long getDiskBytes()
+	{
+		return (disk != null) ? disk.getBytes() : 0;
+	}
+
+	/**
+	 * @return number of lookups served from memory
+	 */
+	public synchronized long getMemoryHitCount()
+	{
+		return memoryHits;
+	}
+
+	/**
+	 * @return number of lookups served from disk
+	 */
+	public synchronized long getDiskHitCount()
+	{
+		return diskHits;
+	}
+
+	/**
+	 * @return number of lookups served from neither (so downloaded)
+	 */
+	public synchronized long getMissCount()
+	{
+		return misses;
+	}
+
+	/**
+	 * @return ratio of lookups served from memory or disk (0.0 ~ 1.0)
+	 */
+	public synchronized float getHitRate()
+	{
+		long lookups = memoryHits + diskHits + misses;
+		return (lookups > 0) ? (float)(memoryHits + diskHits) / lookups : 0;
+	}
+
+	/**
+	 * reset hit/miss counters
+	 */
+	public synchronized void resetStatistics()
+	{
+		memoryHits = diskHits = misses = 0;
+	}
+
+	/**
+	 *
+	 * @param key
+	 * @param bitmap
+	 */
+	private void putInMemory(String key, Bitmap bitmap)
+	{
+		Bitmap previous = memory.put(key, bitmap);
+		if(previous != null)
+			memoryBytes -= getByteCount(previous);
+		memoryBytes += getByteCount(bitmap);
+
+		//evict least recently used ones
+		Iterator<Map.Entry<String, Bitmap>> iterator = memory.entrySet().iterator();
+		while(memoryBytes > maxMemoryBytes && iterator.hasNext())
+		{
+			Map.Entry<String, Bitmap> eldest = iterator.next();
+			iterator.remove();
+			memoryBytes -= getByteCount(eldest.getValue());
+		}
+	}
+
+	/**
+	 *
+	 * @param bitmap
+	 * @return
+	 */
+	private static long getByteCount(Bitmap bitmap)
+	{
+		return (long)bitmap.getRowBytes() * bitmap.getHeight();
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return String.format("hit rate: %.2f (memory: %d, disk: %d, misses: %d), memory: %d/%d bytes, disk: %s",
+				getHitRate(), memoryHits, diskHits, misses, memoryBytes, maxMemoryBytes, disk);
+	}
+}
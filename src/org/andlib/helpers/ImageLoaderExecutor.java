@@ -0,0 +1,398 @@
+package org.andlib.helpers;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import android.os.Process;
+
+/**
+ * bounded thread pool for loading images, which runs queued jobs by priority
+ * <br>
+ * <br>
+ * - jobs of higher priority run first, and among the same priority, newest ones first (LIFO),
+ *   so rows which just scrolled into view are loaded before the ones which scrolled past<br>
+ * - queued jobs can be found by their tags, to be demoted (or promoted) or removed<br>
+ * - while paused (eg. during a fling), idle threads do not take jobs from the queue, so all of them stay queued
+ *   (and can be reordered or removed) until resumed; running ones are not interrupted
+ * <br>
+ * <br>
+ * threads run in background priority.
+ *
+ * @author meinside@gmail.com
+ * @since 26.10.18.
+ *
+ * last update 26.10.18.
+ *
+ */
+public class ImageLoaderExecutor implements Executor
+{
+	public static final int PRIORITY_LOW = 0;
+	public static final int PRIORITY_NORMAL = 1;
+	public static final int PRIORITY_HIGH = 2;
+
+	private ThreadPoolExecutor executor;
+	private PausableQueue queue = new PausableQueue();
+	private AtomicLong sequence = new AtomicLong(0);
+
+	/**
+	 * with threads as many as processors (2 ~ 4)
+	 */
+	public ImageLoaderExecutor()
+	{
+		this(Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors())));
+	}
+
+	/**
+	 *
+	 * @param threads number of threads
+	 */
+	public ImageLoaderExecutor(int threads)
+	{
+		final AtomicInteger count = new AtomicInteger(0);
+		executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, queue, new ThreadFactory(){
+			public Thread newThread(final Runnable runnable)
+			{
+				return new Thread(new Runnable(){
+					public void run()
+					{
+						Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+						runnable.run();
+					}
+				}, "ImageLoader #" + count.incrementAndGet());
+			}
+		});
+
+		//(otherwise, first jobs would be handed to new threads directly, bypassing the queue)
+		executor.prestartAllCoreThreads();
+	}
+
+	/**
+	 * run a job of normal priority (without a tag)
+	 */
+	public void execute(Runnable command)
+	{
+		execute(command, null, PRIORITY_NORMAL);
+	}
+
+	/**
+	 *
+	 * @param command
+	 * @param tag for finding this job later (can be null)
+	 * @param priority PRIORITY_LOW, PRIORITY_NORMAL, PRIORITY_HIGH, or any other int (higher runs first)
+	 */
+	public void execute(Runnable command, Object tag, int priority)
+	{
+		if(command == null)
+			throw new NullPointerException("command is null");
+
+		executor.execute(new Job(command, tag, priority, sequence.incrementAndGet()));
+	}
+
+	/**
+	 * @param tag
+	 * @param priority
+	 * @return an executor which runs jobs with given tag and priority (eg. for AsyncTask.executeOnExecutor())
+	 */
+	public Executor withPriority(final Object tag, final int priority)
+	{
+		return new Executor(){
+			public void execute(Runnable command)
+			{
+				ImageLoaderExecutor.this.execute(command, tag, priority);
+			}
+		};
+	}
+
+	/**
+	 * change priority of queued jobs with given tag
+	 *
+	 * @param tag
+	 * @param priority
+	 * @return false if no job with given tag is queued (eg. it is already running)
+	 */
+	public boolean setPriority(Object tag, int priority)
+	{
+		if(tag == null)
+			return false;
+
+		boolean found = false;
+		Iterator<Runnable> iterator = queue.iterator();	//(iterates over a snapshot)
+		while(iterator.hasNext())
+		{
+			Job job = (Job)iterator.next();
+			if(job.tag != tag)
+				continue;
+
+			if(job.priority == priority)
+			{
+				found = true;
+			}
+			else if(queue.remove(job))	//(false if taken by a thread meanwhile)
+			{
+				//requeued as the newest one of its priority
+				queue.offer(new Job(job.command, tag, priority, sequence.incrementAndGet()));
+				found = true;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * remove queued jobs with given tag (running ones are not affected)
+	 *
+	 * @param tag
+	 * @return false if no job with given tag is queued
+	 */
+	public boolean remove(Object tag)
+	{
+		if(tag == null)
+			return false;
+
+		boolean removed = false;
+		Iterator<Runnable> iterator = queue.iterator();	//(iterates over a snapshot)
+		while(iterator.hasNext())
+		{
+			Runnable job = iterator.next();
+			if(((Job)job).tag == tag && queue.remove(job))
+				removed = true;
+		}
+		return removed;
+	}
+
+	/**
+	 * do not start queued jobs until {@link #resume()}
+	 */
+	public void pause()
+	{
+		queue.setPaused(true);
+	}
+
+	/**
+	 * start queued jobs again
+	 */
+	public void resume()
+	{
+		queue.setPaused(false);
+	}
+
+	/**
+	 * @return whether paused or not
+	 */
+	public boolean isPaused()
+	{
+		return queue.isPaused();
+	}
+
+	/**
+	 * @return number of queued (not yet started) jobs
+	 */
+	public int getQueuedCount()
+	{
+		return queue.size();
+	}
+
+	/**
+	 * stop all threads after running jobs
+	 * <br>
+	 * queued jobs are discarded: those which are futures (eg. of AsyncTask) are cancelled, so their owners are notified
+	 */
+	public void shutdown()
+	{
+		executor.shutdown();
+		queue.close();	//(wakes up waiting threads, so they can finish)
+
+		ArrayList<Runnable> drained = new ArrayList<Runnable>();
+		queue.drainTo(drained);
+		for(Runnable job: drained)
+		{
+			Runnable command = ((Job)job).command;
+			if(command instanceof Future)
+				((Future<?>)command).cancel(false);
+		}
+	}
+
+	/**
+	 * @return true after {@link #shutdown()}
+	 */
+	public boolean isShutdown()
+	{
+		return executor.isShutdown();
+	}
+
+	/**
+	 * priority queue whose threads wait (without taking a job) while paused
+	 *
+	 * @author meinside@gmail.com
+	 *
+	 */
+	private static class PausableQueue extends PriorityBlockingQueue<Runnable>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final ReentrantLock lock = new ReentrantLock();
+		private final Condition changed = lock.newCondition();	//job added, or resumed
+		private boolean paused = false;
+		private boolean closed = false;
+
+		/**
+		 * stop waiting: threads get no more jobs, and are interrupted
+		 */
+		public void close()
+		{
+			lock.lock();
+			try
+			{
+				closed = true;
+				changed.signalAll();
+			}
+			finally
+			{
+				lock.unlock();
+			}
+		}
+
+		public void setPaused(boolean paused)
+		{
+			lock.lock();
+			try
+			{
+				this.paused = paused;
+				if(!paused)
+					changed.signalAll();
+			}
+			finally
+			{
+				lock.unlock();
+			}
+		}
+
+		public boolean isPaused()
+		{
+			lock.lock();
+			try
+			{
+				return paused;
+			}
+			finally
+			{
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public boolean offer(Runnable job)
+		{
+			boolean offered = super.offer(job);
+
+			lock.lock();
+			try
+			{
+				changed.signal();
+			}
+			finally
+			{
+				lock.unlock();
+			}
+			return offered;
+		}
+
+		@Override
+		public Runnable take() throws InterruptedException
+		{
+			lock.lockInterruptibly();
+			try
+			{
+				while(true)
+				{
+					if(closed)
+						throw new InterruptedException("closed");
+					if(!paused)
+					{
+						Runnable job = super.poll();
+						if(job != null)
+							return job;
+					}
+					changed.await();
+				}
+			}
+			finally
+			{
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException
+		{
+			long nanos = unit.toNanos(timeout);
+			lock.lockInterruptibly();
+			try
+			{
+				while(true)
+				{
+					if(closed)
+						throw new InterruptedException("closed");
+					if(!paused)
+					{
+						Runnable job = super.poll();
+						if(job != null)
+							return job;
+					}
+					if(nanos <= 0)
+						return null;
+					nanos = changed.awaitNanos(nanos);
+				}
+			}
+			finally
+			{
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * queued job, ordered by priority (higher first), then by sequence (newer first)
+	 *
+	 * @author meinside@gmail.com
+	 *
+	 */
+	private static class Job implements Runnable, Comparable<Job>
+	{
+		final Runnable command;
+		final Object tag;
+		final int priority;
+		final long sequence;
+
+		public Job(Runnable command, Object tag, int priority, long sequence)
+		{
+			this.command = command;
+			this.tag = tag;
+			this.priority = priority;
+			this.sequence = sequence;
+		}
+
+		public void run()
+		{
+			command.run();
+		}
+
+		public int compareTo(Job another)
+		{
+			if(priority != another.priority)
+				return (priority > another.priority) ? -1 : 1;
+			if(sequence != another.sequence)
+				return (sequence > another.sequence) ? -1 : 1;
+			return 0;
+		}
+	}
+}
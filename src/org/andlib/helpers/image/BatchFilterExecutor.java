@@ -0,0 +1,536 @@
+package org.andlib.helpers.image;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.andlib.helpers.Logger;
+
+import outsourced.image.filter.base.FilterBase;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+/**
+ * applies filters to many image files through a bounded decode -> filter -> compress/save pipeline
+ * <br>
+ * <br>
+ * - one thread decodes, a few threads filter, and one thread compresses and saves<br>
+ * - stages are connected with bounded queues, and an item holds one of maxBitmaps permits from decoding to saving,
+ *   so no more than maxBitmaps items (full-size bitmaps) are in memory at once: decoding waits until saving catches up<br>
+ * - each item is reported to {@link BatchListener} as soon as it is saved (or failed), on the worker threads
+ *
+ * @author meinside@gmail.com
+ * @since 26.10.18.
+ *
+ * last update 26.10.18.
+ *
+ */
+public class BatchFilterExecutor
+{
+	public static final int DEFAULT_MAX_BITMAPS = 2;
+	public static final int DEFAULT_FILTER_THREADS = 1;
+
+	private FilterBase[] filters;
+	private Bitmap.CompressFormat format;
+	private int quality;
+	private int maxBitmaps;
+	private int filterThreads;
+
+	private volatile boolean running = false;
+	private volatile boolean cancelled = false;
+	private CountDownLatch finished = null;
+
+	/**
+	 *
+	 * @param format
+	 * @param quality 1 ~ 100
+	 * @param filters applied one after another (see {@link ImageUtility#applyFilters(Bitmap, FilterBase...)})
+	 */
+	public BatchFilterExecutor(Bitmap.CompressFormat format, int quality, FilterBase... filters)
+	{
+		this(DEFAULT_MAX_BITMAPS, DEFAULT_FILTER_THREADS, format, quality, filters);
+	}
+
+	/**
+	 *
+	 * @param maxBitmaps max number of items (decoded or filtered bitmaps) in memory at once
+	 * @param filterThreads number of threads for the filter stage
+	 * @param format
+	 * @param quality 1 ~ 100
+	 * @param filters applied one after another (see {@link ImageUtility#applyFilters(Bitmap, FilterBase...)})
+	 */
+	public BatchFilterExecutor(int maxBitmaps, int filterThreads, Bitmap.CompressFormat format, int quality, FilterBase... filters)
+	{
+		this.maxBitmaps = Math.max(1, maxBitmaps);
+		this.filterThreads = Math.max(1, Math.min(filterThreads, this.maxBitmaps));
+		this.format = format;
+		this.quality = quality;
+		this.filters = filters;
+	}
+
+	/**
+	 * start processing given items in background
+	 *
+	 * @param items
+	 * @param listener can be null
+	 * @return false if already running or on parameter error
+	 */
+	public synchronized boolean execute(List<Item> items, BatchListener listener)
+	{
+		if(running)
+		{
+			Logger.e("already running");
+			return false;
+		}
+		if(items == null || filters == null || filters.length == 0 || format == null)
+		{
+			Logger.e("parameter error (items null, no filter, or format null)");
+			return false;
+		}
+
+		running = true;
+		cancelled = false;
+		finished = new CountDownLatch(1);
+		new Batch(new ArrayList<Item>(items), listener).start();
+		return true;
+	}
+
+	/**
+	 * stop processing: items in the pipeline are reported as failed, and items not started yet are not reported at all
+	 */
+	public void cancel()
+	{
+		cancelled = true;
+	}
+
+	/**
+	 * @return whether a batch is running or not
+	 */
+	public boolean isRunning()
+	{
+		return running;
+	}
+
+	/**
+	 * wait for the running batch (if any) to finish
+	 *
+	 * @throws InterruptedException
+	 */
+	public void await() throws InterruptedException
+	{
+		CountDownLatch finished;
+		synchronized(this)
+		{
+			finished = this.finished;
+		}
+		if(finished != null)
+			finished.await();
+	}
+
+	/**
+	 * source and output location of an image
+	 */
+	public static class Item
+	{
+		private String srcPath;
+		private String dstPath;
+
+		/**
+		 *
+		 * @param srcPath path of an image file
+		 * @param dstPath path of the filtered image file
+		 */
+		public Item(String srcPath, String dstPath)
+		{
+			this.srcPath = srcPath;
+			this.dstPath = dstPath;
+		}
+
+		/**
+		 * @return the srcPath
+		 */
+		public String getSrcPath()
+		{
+			return srcPath;
+		}
+
+		/**
+		 * @return the dstPath
+		 */
+		public String getDstPath()
+		{
+			return dstPath;
+		}
+	}
+
+	/**
+	 * for calling back results (called on worker threads)
+	 *
+	 * @author meinside@gmail.com
+	 *
+	 */
+	public interface BatchListener
+	{
+		/**
+		 * called when an item is filtered and saved
+		 *
+		 * @param index index in the list of items
+		 * @param item
+		 */
+		public void itemCompleted(int index, Item item);
+
+		/**
+		 * called when an item failed to be decoded, filtered or saved (or cancelled)
+		 *
+		 * @param index index in the list of items
+		 * @param item
+		 * @param reason
+		 */
+		public void itemFailed(int index, Item item, String reason);
+
+		/**
+		 * called when all items are processed, or the batch is cancelled
+		 *
+		 * @param completed number of completed items
+		 * @param failed number of failed items
+		 * @param cancelled
+		 */
+		public void batchCompleted(int completed, int failed, boolean cancelled);
+	}
+
+	/**
+	 * an item and its bitmap, passed between stages
+	 */
+	private static class Job
+	{
+		int index;
+		Item item;
+		Bitmap bitmap;
+
+		Job(int index, Item item, Bitmap bitmap)
+		{
+			this.index = index;
+			this.item = item;
+			this.bitmap = bitmap;
+		}
+	}
+
+	private static final Job END = new Job(-1, null, null);
+
+	/**
+	 * threads and queues of one batch
+	 */
+	private class Batch
+	{
+		private List<Item> items;
+		private BatchListener listener;
+
+		private Semaphore permits = new Semaphore(maxBitmaps);
+		private BlockingQueue<Job> filterQueue = new ArrayBlockingQueue<Job>(maxBitmaps + filterThreads);
+		private BlockingQueue<Job> saveQueue = new ArrayBlockingQueue<Job>(maxBitmaps + 1);
+
+		private AtomicInteger filtersLeft = new AtomicInteger(filterThreads);
+		private AtomicInteger completed = new AtomicInteger(0);
+		private AtomicInteger failed = new AtomicInteger(0);
+
+		Batch(List<Item> items, BatchListener listener)
+		{
+			this.items = items;
+			this.listener = listener;
+		}
+
+		void start()
+		{
+			new Thread(new Runnable(){
+				public void run()
+				{
+					decode();
+				}
+			}, "BatchFilterExecutor-decode").start();
+
+			for(int i=0; i<filterThreads; i++)
+			{
+				new Thread(new Runnable(){
+					public void run()
+					{
+						filter();
+					}
+				}, "BatchFilterExecutor-filter-" + i).start();
+			}
+
+			new Thread(new Runnable(){
+				public void run()
+				{
+					save();
+				}
+			}, "BatchFilterExecutor-save").start();
+		}
+
+		/**
+		 * stage 1: decode source files (blocks while maxBitmaps items are in the pipeline)
+		 */
+		private void decode()
+		{
+			try
+			{
+				for(int i=0; i<items.size() && !cancelled; i++)
+				{
+					permits.acquire();
+					if(cancelled)
+					{
+						permits.release();
+						break;
+					}
+
+					Item item = items.get(i);
+					Bitmap bitmap = null;
+					try
+					{
+						bitmap = BitmapFactory.decodeFile(item.getSrcPath());
+					}
+					catch(OutOfMemoryError e)
+					{
+						Logger.e(e.toString());
+					}
+					catch(RuntimeException e)
+					{
+						Logger.e(e.toString());
+					}
+
+					if(bitmap == null)
+						fail(new Job(i, item, null), "failed to decode: " + item.getSrcPath());
+					else
+						filterQueue.put(new Job(i, item, bitmap));
+				}
+			}
+			catch(InterruptedException e)
+			{
+				Logger.e(e.toString());
+			}
+			finally
+			{
+				//(filter threads finish only with these)
+				for(int i=0; i<filterThreads; i++)
+					putEnd(filterQueue);
+			}
+		}
+
+		/**
+		 * stage 2: filter decoded bitmaps
+		 */
+		private void filter()
+		{
+			try
+			{
+				Job job;
+				while((job = filterQueue.take()) != END)
+				{
+					if(cancelled)
+					{
+						fail(job, "cancelled");
+						continue;
+					}
+
+					Bitmap filtered = null;
+					try
+					{
+						filtered = ImageUtility.applyFilters(job.bitmap, filters);
+					}
+					catch(OutOfMemoryError e)
+					{
+						Logger.e(e.toString());
+					}
+					catch(RuntimeException e)
+					{
+						Logger.e(e.toString());
+					}
+
+					if(filtered != job.bitmap)
+						job.bitmap.recycle();
+					job.bitmap = filtered;
+
+					if(filtered == null)
+						fail(job, "failed to filter: " + job.item.getSrcPath());
+					else
+						saveQueue.put(job);
+				}
+			}
+			catch(InterruptedException e)
+			{
+				Logger.e(e.toString());
+			}
+			finally
+			{
+				//(save thread finishes only with this, after all filter threads)
+				if(filtersLeft.decrementAndGet() == 0)
+					putEnd(saveQueue);
+			}
+		}
+
+		/**
+		 * stage 3: compress and save filtered bitmaps
+		 */
+		private void save()
+		{
+			try
+			{
+				Job job;
+				while((job = saveQueue.take()) != END)
+				{
+					if(cancelled)
+					{
+						fail(job, "cancelled");
+						continue;
+					}
+
+					boolean saved = false;
+					try
+					{
+						saved = compress(job.bitmap, job.item.getDstPath());
+					}
+					catch(RuntimeException e)
+					{
+						Logger.e(e.toString());
+					}
+
+					if(!saved)
+					{
+						fail(job, "failed to save: " + job.item.getDstPath());
+						continue;
+					}
+
+					job.bitmap.recycle();
+					permits.release();
+
+					completed.incrementAndGet();
+					if(listener != null)
+					{
+						try
+						{
+							listener.itemCompleted(job.index, job.item);	//call back
+						}
+						catch(RuntimeException e)
+						{
+							Logger.e(e.toString());
+						}
+					}
+				}
+			}
+			catch(InterruptedException e)
+			{
+				Logger.e(e.toString());
+			}
+			finally
+			{
+				running = false;
+				finished.countDown();
+
+				if(listener != null)
+				{
+					try
+					{
+						listener.batchCompleted(completed.get(), failed.get(), cancelled);	//call back
+					}
+					catch(RuntimeException e)
+					{
+						Logger.e(e.toString());
+					}
+				}
+			}
+		}
+
+		/**
+		 * recycle bitmap of given job, give its permit back, and report it
+		 *
+		 * @param job
+		 * @param reason
+		 */
+		private void fail(Job job, String reason)
+		{
+			if(job.bitmap != null)
+				job.bitmap.recycle();
+			permits.release();
+
+			Logger.e(reason);
+
+			failed.incrementAndGet();
+			if(listener != null)
+			{
+				try
+				{
+					listener.itemFailed(job.index, job.item, reason);	//call back
+				}
+				catch(RuntimeException e)
+				{
+					Logger.e(e.toString());
+				}
+			}
+		}
+
+		/**
+		 * put END into given queue, even when interrupted (interrupted status is restored afterwards)
+		 *
+		 * @param queue
+		 */
+		private void putEnd(BlockingQueue<Job> queue)
+		{
+			boolean interrupted = false;
+			while(true)
+			{
+				try
+				{
+					queue.put(END);
+					break;
+				}
+				catch(InterruptedException e)
+				{
+					interrupted = true;
+				}
+			}
+
+			if(interrupted)
+				Thread.currentThread().interrupt();
+		}
+
+		/**
+		 *
+		 * @param bitmap
+		 * @param outputLocation
+		 * @return false on error
+		 */
+		private boolean compress(Bitmap bitmap, String outputLocation)
+		{
+			FileOutputStream output = null;
+			try
+			{
+				output = new FileOutputStream(outputLocation);
+				return bitmap.compress(format, quality, output);
+			}
+			catch(IOException e)
+			{
+				Logger.e(e.toString());
+			}
+			finally
+			{
+				if(output != null)
+				{
+					try
+					{
+						output.close();
+					}
+					catch(IOException e)
+					{
+						Logger.e(e.toString());
+					}
+				}
+			}
+			return false;
+		}
+	}
+}
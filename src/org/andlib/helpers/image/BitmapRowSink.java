@@ -0,0 +1,42 @@
+package org.andlib.helpers.image;
+
+import outsourced.image.filter.kernel.RowSink;
+import android.graphics.Bitmap;
+
+/**
+ * writes rows into a mutable bitmap
+ * 
+ * @author meinside@gmail.com
+ * @since 26.10.18.
+ * 
+ * last update 26.10.18.
+ *
+ */
+public class BitmapRowSink implements RowSink
+{
+	private Bitmap bitmap;
+
+	/**
+	 * 
+	 * @param bitmap mutable bitmap
+	 */
+	public BitmapRowSink(Bitmap bitmap)
+	{
+		this.bitmap = bitmap;
+	}
+
+	/**
+	 * @return the bitmap
+	 */
+	public Bitmap getBitmap()
+	{
+		return bitmap;
+	}
+
+	@Override
+	public void writeRows(int fromY, int rows, int[] pixels, int offset)
+	{
+		int width = bitmap.getWidth();
+		bitmap.setPixels(pixels, offset, width, 0, fromY, width, rows);
+	}
+}
@@ -0,0 +1,350 @@
+package org.andlib.helpers.image;
+
+import org.andlib.helpers.Logger;
+
+import outsourced.image.filter.kernel.PixelBufferPool;
+import outsourced.image.filter.kernel.RowBands;
+import android.graphics.Bitmap;
+
+/**
+ * reusable blur engine
+ * <br>
+ * <br>
+ * scratch buffers are drawn from {@link PixelBufferPool#getShared()} (so that repeated blurs of the same size allocate nothing),
+ * and horizontal/vertical passes are run in parallel bands of rows/columns (see {@link RowBands}).
+ * <br>
+ * <br>
+ * referenced: http://incubator.quasimondo.com/processing/superfastblur.pde
+ *
+ * @author meinside@gmail.com
+ * @since 26.10.18.
+ *
+ * last update 26.10.18.
+ *
+ */
+public class BlurEngine
+{
+	private boolean parallel = true;
+
+	//scratch buffers (channels after the horizontal pass), acquired only while blurring
+	private int[] r = null;
+	private int[] g = null;
+	private int[] b = null;
+	private int[] a = null;
+
+	//clamped neighbour offsets
+	private int[] hMin = null;
+	private int[] hMax = null;
+	private int[] vMin = null;
+	private int[] vMax = null;
+
+	//dv[sum] = sum / (radius * 2 + 1)
+	private int[] dv = null;
+	private int dvRadius = 0;
+
+	/**
+	 * @return whether passes are run in parallel bands or not
+	 */
+	public boolean isParallel()
+	{
+		return parallel;
+	}
+
+	/**
+	 *
+	 * @param parallel
+	 */
+	public void setParallel(boolean parallel)
+	{
+		this.parallel = parallel;
+	}
+
+	/**
+	 * release lookup tables
+	 */
+	public synchronized void release()
+	{
+		hMin = hMax = vMin = vMax = null;
+		dv = null;
+		dvRadius = 0;
+	}
+
+	/**
+	 * blur given bitmap into a new bitmap
+	 *
+	 * @param original
+	 * @param radius
+	 * @param config Bitmap.Config.RGB_565 or Bitmap.Config.ARGB_8888 (alpha channel is also blurred and kept)
+	 * @return null on error
+	 */
+	public synchronized Bitmap blur(Bitmap original, int radius, Bitmap.Config config)
+	{
+		if(original == null || (config != Bitmap.Config.RGB_565 && config != Bitmap.Config.ARGB_8888))
+		{
+			Logger.e("parameter error (bitmap null or config not supported)");
+			return null;
+		}
+
+		int width = original.getWidth();
+		int height = original.getHeight();
+
+		PixelBufferPool pool = PixelBufferPool.getShared();
+		int[] pixels = pool.acquire(width * height);
+		original.getPixels(pixels, 0, width, 0, 0, width, height);
+
+		try
+		{
+			if(!blur(pixels, pixels, width, height, radius, config == Bitmap.Config.ARGB_8888))
+				return null;
+
+			return Bitmap.createBitmap(pixels, 0, width, width, height, config);
+		}
+		finally
+		{
+			pool.release(pixels);
+		}
+	}
+
+	/**
+	 * blur given bitmap into a reused bitmap (nothing is allocated once scratch buffers are grown enough)
+	 *
+	 * @param original
+	 * @param radius
+	 * @param output mutable bitmap of the same size as original (alpha channel is kept if its config is Bitmap.Config.ARGB_8888)
+	 * @return false on error
+	 */
+	public synchronized boolean blur(Bitmap original, int radius, Bitmap output)
+	{
+		if(original == null || output == null || !output.isMutable() ||
+			original.getWidth() != output.getWidth() || original.getHeight() != output.getHeight())
+		{
+			Logger.e("parameter error (bitmap null, output not mutable, or sizes differ)");
+			return false;
+		}
+
+		int width = original.getWidth();
+		int height = original.getHeight();
+
+		PixelBufferPool pool = PixelBufferPool.getShared();
+		int[] pixels = pool.acquire(width * height);
+		original.getPixels(pixels, 0, width, 0, 0, width, height);
+
+		try
+		{
+			if(!blur(pixels, pixels, width, height, radius, output.getConfig() == Bitmap.Config.ARGB_8888))
+				return false;
+
+			output.setPixels(pixels, 0, width, 0, 0, width, height);
+			return true;
+		}
+		finally
+		{
+			pool.release(pixels);
+		}
+	}
+
+	/**
+	 * blur given pixels
+	 *
+	 * @param srcPixels ARGB pixels (width * height)
+	 * @param dstPixels blurred ARGB pixels (width * height), can be the same array as srcPixels
+	 * @param width
+	 * @param height
+	 * @param radius
+	 * @param alpha whether alpha channel is also blurred or not (if not, it becomes 255)
+	 * @return false on error
+	 */
+	public synchronized boolean blur(final int[] srcPixels, final int[] dstPixels, final int width, final int height, final int radius, final boolean alpha)
+	{
+		if(srcPixels == null || dstPixels == null || radius < 1 || width <= 0 || height <= 0 ||
+			srcPixels.length < width * height || dstPixels.length < width * height)
+		{
+			Logger.e("parameter error (pixels null or too small, or radius less than 1)");
+			return false;
+		}
+
+		prepare(width, height, radius, alpha);
+
+		try
+		{
+			if(parallel)
+			{
+				RowBands.run(0, height, new RowBands.Band(){
+					public void process(int fromY, int toY)
+					{
+						blurRows(srcPixels, width, radius, fromY, toY, alpha);
+					}
+				});
+				RowBands.run(0, width, new RowBands.Band(){
+					public void process(int fromX, int toX)
+					{
+						blurColumns(dstPixels, width, height, radius, fromX, toX, alpha);
+					}
+				});
+			}
+			else
+			{
+				blurRows(srcPixels, width, radius, 0, height, alpha);
+				blurColumns(dstPixels, width, height, radius, 0, width, alpha);
+			}
+		}
+		finally
+		{
+			PixelBufferPool pool = PixelBufferPool.getShared();
+			pool.release(r);
+			pool.release(g);
+			pool.release(b);
+			pool.release(a);
+			r = g = b = a = null;
+		}
+
+		return true;
+	}
+
+	/**
+	 * acquire scratch buffers, and grow/build tables if needed
+	 *
+	 * @param width
+	 * @param height
+	 * @param radius
+	 * @param alpha
+	 */
+	private void prepare(int width, int height, int radius, boolean alpha)
+	{
+		int wh = width * height;
+		PixelBufferPool pool = PixelBufferPool.getShared();
+		r = pool.acquire(wh);
+		g = pool.acquire(wh);
+		b = pool.acquire(wh);
+		a = alpha ? pool.acquire(wh) : null;
+
+		if(hMin == null || hMin.length < width)
+		{
+			hMin = new int[width];
+			hMax = new int[width];
+		}
+		if(vMin == null || vMin.length < height)
+		{
+			vMin = new int[height];
+			vMax = new int[height];
+		}
+
+		int i;
+		for(i=0; i<width; i++)
+		{
+			hMin[i] = Math.min(i + radius + 1, width - 1);
+			hMax[i] = Math.max(i - radius, 0);
+		}
+		for(i=0; i<height; i++)
+		{
+			vMin[i] = Math.min(i + radius + 1, height - 1) * width;
+			vMax[i] = Math.max(i - radius, 0) * width;
+		}
+
+		if(dv == null || dvRadius != radius)
+		{
+			int div = radius + radius + 1;
+			dv = new int[256 * div];
+			for(i=0; i<256*div; i++)
+				dv[i] = i / div;
+			dvRadius = radius;
+		}
+	}
+
+	/**
+	 * horizontal pass: srcPixels -> r, g, b (, a)
+	 *
+	 * @param srcPixels
+	 * @param width
+	 * @param radius
+	 * @param fromY
+	 * @param toY
+	 * @param alpha
+	 */
+	private void blurRows(int[] srcPixels, int width, int radius, int fromY, int toY, boolean alpha)
+	{
+		int[] r = this.r, g = this.g, b = this.b, a = this.a, dv = this.dv, hMin = this.hMin, hMax = this.hMax;
+		int wm = width - 1;
+		int asum, rsum, gsum, bsum, x, y, i, p, p1, p2, yi, yw;
+
+		for(y=fromY; y<toY; y++)
+		{
+			yw = yi = y * width;
+
+			asum = rsum = gsum = bsum = 0;
+			for(i=-radius; i<=radius; i++)
+			{
+				p = srcPixels[yw + Math.min(wm, Math.max(i, 0))];
+				asum += p >>> 24;
+				rsum += (p & 0xff0000) >> 16;
+				gsum += (p & 0x00ff00) >> 8;
+				bsum += p & 0x0000ff;
+			}
+			for(x=0; x<width; x++)
+			{
+				r[yi] = dv[rsum];
+				g[yi] = dv[gsum];
+				b[yi] = dv[bsum];
+				if(alpha)
+					a[yi] = dv[asum];
+
+				p1 = srcPixels[yw + hMin[x]];
+				p2 = srcPixels[yw + hMax[x]];
+
+				asum += (p1 >>> 24) - (p2 >>> 24);
+				rsum += ((p1 & 0xff0000) - (p2 & 0xff0000)) >> 16;
+				gsum += ((p1 & 0x00ff00) - (p2 & 0x00ff00)) >> 8;
+				bsum += (p1 & 0x0000ff) - (p2 & 0x0000ff);
+				yi ++;
+			}
+		}
+	}
+
+	/**
+	 * vertical pass: r, g, b (, a) -> dstPixels
+	 *
+	 * @param dstPixels
+	 * @param width
+	 * @param height
+	 * @param radius
+	 * @param fromX
+	 * @param toX
+	 * @param alpha
+	 */
+	private void blurColumns(int[] dstPixels, int width, int height, int radius, int fromX, int toX, boolean alpha)
+	{
+		int[] r = this.r, g = this.g, b = this.b, a = this.a, dv = this.dv, vMin = this.vMin, vMax = this.vMax;
+		int hm = height - 1;
+		int asum, rsum, gsum, bsum, x, y, i, p1, p2, yi;
+
+		for(x=fromX; x<toX; x++)
+		{
+			asum = rsum = gsum = bsum = 0;
+			for(i=-radius; i<=radius; i++)
+			{
+				yi = Math.min(hm, Math.max(i, 0)) * width + x;
+				rsum += r[yi];
+				gsum += g[yi];
+				bsum += b[yi];
+				if(alpha)
+					asum += a[yi];
+			}
+			yi = x;
+			for(y=0; y<height; y++)
+			{
+				dstPixels[yi] = (alpha ? (dv[asum] << 24) : 0xff000000) | (dv[rsum] << 16) | (dv[gsum] << 8) | dv[bsum];
+
+				p1 = x + vMin[y];
+				p2 = x + vMax[y];
+
+				rsum += r[p1] - r[p2];
+				gsum += g[p1] - g[p2];
+				bsum += b[p1] - b[p2];
+				if(alpha)
+					asum += a[p1] - a[p2];
+
+				yi += width;
+			}
+		}
+	}
+}
@@ -0,0 +1,474 @@
+package org.andlib.helpers.image;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.andlib.helpers.Logger;
+import org.andlib.helpers.StringCodec;
+
+import outsourced.image.filter.base.FilterBase;
+import outsourced.image.filter.kernel.PixelKernel;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+/**
+ * LRU cache of filtered bitmaps, keyed by source identity, filter class and its parameters
+ * <br>
+ * <br>
+ * - memory is bounded by the total bytes of cached bitmaps, and least recently used ones are evicted first<br>
+ * - with a disk directory, evicted bitmaps are spilled as PNG files (also bounded, least recently used first),
+ *   and read back in their original config on a memory miss (encoding and decoding are done outside the lock)<br>
+ * - results keyed by source identity are spilled only while their source bitmap is alive (they cannot be looked up afterwards)<br>
+ * - each source bitmap gets its own id while it is alive (not its contents), so a cached result is reused only for the same bitmap object
+ *   (or the same explicit source key)<br>
+ * - filters without kernels, or whose kernels have no signature (see {@link outsourced.image.filter.kernel.PixelKernel#getSignature()}) are not cached
+ * <br>
+ * <br>
+ * cached bitmaps are shared, so they should not be recycled or modified by callers.
+ *
+ * @author meinside@gmail.com
+ * @since 26.10.18.
+ *
+ * last update 26.10.18.
+ *
+ */
+public class FilterResultCache
+{
+	public static final String SPILL_FILE_SUFFIX = ".filtered.png";
+
+	private static final String IDENTITY_PREFIX = "#";	//of keys of source identity
+	private static final String SOURCE_KEY_PREFIX = "=";	//of keys of explicit source keys
+
+	private long maxBytes;
+	private long bytes = 0;
+	private LinkedHashMap<String, Bitmap> memory = new LinkedHashMap<String, Bitmap>(16, 0.75f, true);
+
+	private File diskDirectory = null;
+	private long maxDiskBytes = 0;
+	private long diskBytes = 0;
+	private LinkedHashMap<String, Spill> disk = new LinkedHashMap<String, Spill>(16, 0.75f, true);
+	private int tempCount = 0;
+
+	private WeakHashMap<Bitmap, Long> sourceIds = new WeakHashMap<Bitmap, Long>();
+	private long nextSourceId = 0;
+
+	private long hits = 0;
+	private long diskHits = 0;
+	private long misses = 0;
+
+	/**
+	 *
+	 * @param maxBytes limit of cached bitmaps in memory (in bytes)
+	 */
+	public FilterResultCache(long maxBytes)
+	{
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * (files spilled before in given directory are deleted here)
+	 *
+	 * @param maxBytes limit of cached bitmaps in memory (in bytes)
+	 * @param diskDirectory directory for spilled bitmaps (eg. context.getCacheDir())
+	 * @param maxDiskBytes limit of spilled files (in bytes)
+	 */
+	public FilterResultCache(long maxBytes, File diskDirectory, long maxDiskBytes)
+	{
+		this(maxBytes);
+
+		if(diskDirectory != null && (diskDirectory.isDirectory() || diskDirectory.mkdirs()))
+		{
+			this.diskDirectory = diskDirectory;
+			this.maxDiskBytes = maxDiskBytes;
+
+			//keys (source ids) of previous spills are not valid anymore
+			File[] files = diskDirectory.listFiles();
+			if(files != null)
+			{
+				for(File file: files)
+				{
+					if(file.getName().endsWith(SPILL_FILE_SUFFIX))
+						file.delete();
+				}
+			}
+		}
+		else
+		{
+			Logger.e("disk directory not available: " + diskDirectory);
+		}
+	}
+
+	/**
+	 * return cached result of given filter on given bitmap, or filter it and cache the result
+	 *
+	 * @param original
+	 * @param filter
+	 * @return filtered bitmap (shared, should not be recycled), or null on error
+	 */
+	public Bitmap applyFilter(Bitmap original, FilterBase filter)
+	{
+		return applyFilter(null, original, filter);
+	}
+
+	/**
+	 * return cached result of given filter on given bitmap, or filter it and cache the result
+	 *
+	 * @param sourceKey identifies contents of original (eg. file path and its modified time), or null for the identity of original
+	 * @param original
+	 * @param filter
+	 * @return filtered bitmap (shared, should not be recycled), or null on error
+	 */
+	public Bitmap applyFilter(String sourceKey, Bitmap original, FilterBase filter)
+	{
+		if(original == null || filter == null)
+		{
+			Logger.e("parameter error (bitmap or filter null)");
+			return null;
+		}
+
+		String key = getKey(sourceKey, original, filter);
+		if(key != null)
+		{
+			Bitmap cached = get(key);
+			if(cached != null)
+				return cached;
+		}
+
+		Bitmap filtered = ImageUtility.applyFilters(original, filter);
+		if(filtered != null && key != null)
+			put(key, filtered);
+		return filtered;
+	}
+
+	/**
+	 *
+	 * @param sourceKey identifies contents of original, or null for the identity of original
+	 * @param original
+	 * @param filter
+	 * @return cache key, or null if given filter cannot be cached
+	 */
+	public String getKey(String sourceKey, Bitmap original, FilterBase filter)
+	{
+		PixelKernel kernel = filter.getKernel();
+		String signature = (kernel != null) ? kernel.getSignature() : null;
+		if(signature == null)
+			return null;
+
+		if(sourceKey == null)
+		{
+			synchronized(this)
+			{
+				Long id = sourceIds.get(original);
+				if(id == null)
+				{
+					id = nextSourceId ++;
+					sourceIds.put(original, id);
+				}
+				sourceKey = IDENTITY_PREFIX + id;
+			}
+		}
+		else
+		{
+			sourceKey = SOURCE_KEY_PREFIX + sourceKey;
+		}
+
+		return sourceKey + "|" + original.getWidth() + "x" + original.getHeight() + "|" + original.getConfig() + "|" +
+			filter.getClass().getName() + "|" + signature;
+	}
+
+	/**
+	 *
+	 * @param key
+	 * @return cached bitmap (from memory, or read back from disk), or null
+	 */
+	public Bitmap get(String key)
+	{
+		Spill spill;
+		synchronized(this)
+		{
+			Bitmap bitmap = memory.get(key);
+			if(bitmap != null)
+			{
+				if(!bitmap.isRecycled())
+				{
+					hits ++;
+					return bitmap;
+				}
+
+				//recycled by someone
+				memory.remove(key);
+				bytes -= getByteCount(bitmap);
+			}
+
+			spill = disk.get(key);
+			if(spill == null)
+			{
+				misses ++;
+				return null;
+			}
+		}
+
+		//decode in the config of the spilled bitmap (PNG would be decoded as ARGB_8888 otherwise)
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		if(spill.config != null)
+			options.inPreferredConfig = spill.config;
+		options.inDither = false;
+		Bitmap bitmap = BitmapFactory.decodeFile(spill.file.getAbsolutePath(), options);
+
+		synchronized(this)
+		{
+			if(bitmap == null)
+			{
+				if(disk.get(key) == spill)
+					removeFromDisk(key);
+				misses ++;
+				return null;
+			}
+			diskHits ++;
+		}
+		put(key, bitmap);
+		return bitmap;
+	}
+
+	/**
+	 *
+	 * @param key
+	 * @param bitmap
+	 */
+	public void put(String key, Bitmap bitmap)
+	{
+		if(key == null || bitmap == null)
+			return;
+
+		ArrayList<String> evictedKeys = new ArrayList<String>();
+		ArrayList<Bitmap> evicted = new ArrayList<Bitmap>();
+		synchronized(this)
+		{
+			Bitmap previous = memory.put(key, bitmap);
+			if(previous != null)
+				bytes -= getByteCount(previous);
+			bytes += getByteCount(bitmap);
+
+			//evict least recently used ones
+			Iterator<Map.Entry<String, Bitmap>> iterator = memory.entrySet().iterator();
+			while(bytes > maxBytes && iterator.hasNext())
+			{
+				Map.Entry<String, Bitmap> eldest = iterator.next();
+				iterator.remove();
+				bytes -= getByteCount(eldest.getValue());
+				evictedKeys.add(eldest.getKey());
+				evicted.add(eldest.getValue());
+			}
+		}
+
+		//spill them to disk
+		for(int i=0; i<evicted.size(); i++)
+			spill(evictedKeys.get(i), evicted.get(i));
+	}
+
+	/**
+	 * remove all cached bitmaps and spilled files
+	 */
+	public synchronized void clear()
+	{
+		memory.clear();
+		bytes = 0;
+
+		for(Spill spill: disk.values())
+			spill.file.delete();
+		disk.clear();
+		diskBytes = 0;
+	}
+
+	/**
+	 * @return bytes of cached bitmaps in memory
+	 */
+	public synchronized long getBytes()
+	{
+		return bytes;
+	}
+
+	/**
+	 * @return bytes of spilled files
+	 */
+	public synchronized long getDiskBytes()
+	{
+		return diskBytes;
+	}
+
+	/**
+	 * @return number of lookups served from memory
+	 */
+	public synchronized long getHitCount()
+	{
+		return hits;
+	}
+
+	/**
+	 * @return number of lookups served from disk
+	 */
+	public synchronized long getDiskHitCount()
+	{
+		return diskHits;
+	}
+
+	/**
+	 * @return number of lookups not served
+	 */
+	public synchronized long getMissCount()
+	{
+		return misses;
+	}
+
+	/**
+	 * write evicted bitmap to disk (if enabled and not written yet)
+	 * <br>
+	 * (called without the lock: it is encoded into a temporary file, which is then renamed with the lock)
+	 *
+	 * @param key
+	 * @param bitmap
+	 */
+	private void spill(String key, Bitmap bitmap)
+	{
+		File temp;
+		synchronized(this)
+		{
+			if(diskDirectory == null || disk.containsKey(key) || bitmap.isRecycled() || !isSourceAlive(key))
+				return;
+			temp = new File(diskDirectory, StringCodec.md5sum(key) + "." + (tempCount++) + SPILL_FILE_SUFFIX);
+		}
+
+		FileOutputStream output = null;
+		boolean written = false;
+		try
+		{
+			output = new FileOutputStream(temp);
+			written = bitmap.compress(Bitmap.CompressFormat.PNG, 100, output);
+		}
+		catch(IOException e)
+		{
+			Logger.e(e.toString());
+		}
+		finally
+		{
+			if(output != null)
+			{
+				try
+				{
+					output.close();
+				}
+				catch(IOException e)
+				{
+					Logger.e(e.toString());
+					written = false;
+				}
+			}
+		}
+		if(!written)
+		{
+			temp.delete();
+			return;
+		}
+
+		synchronized(this)
+		{
+			File file = new File(diskDirectory, StringCodec.md5sum(key) + SPILL_FILE_SUFFIX);
+			if(disk.containsKey(key) || !temp.renameTo(file))	//spilled by another thread meanwhile, or failed
+			{
+				temp.delete();
+				return;
+			}
+
+			Spill spill = new Spill(file, bitmap.getConfig(), file.length());
+			disk.put(key, spill);
+			diskBytes += spill.length;
+
+			Iterator<Map.Entry<String, Spill>> iterator = disk.entrySet().iterator();
+			while(diskBytes > maxDiskBytes && iterator.hasNext())
+			{
+				Spill eldest = iterator.next().getValue();
+				iterator.remove();
+				diskBytes -= eldest.length;
+				eldest.file.delete();
+			}
+		}
+	}
+
+	/**
+	 * (called with the lock)
+	 *
+	 * @param key
+	 * @return false if given key is of source identity, and its source bitmap is already collected (so it will never be hit again)
+	 */
+	private boolean isSourceAlive(String key)
+	{
+		if(!key.startsWith(IDENTITY_PREFIX))
+			return true;
+
+		try
+		{
+			Long id = Long.valueOf(key.substring(IDENTITY_PREFIX.length(), key.indexOf('|')));
+			return sourceIds.containsValue(id);
+		}
+		catch(RuntimeException e)
+		{
+			return true;	//not made by getKey()
+		}
+	}
+
+	/**
+	 *
+	 * @param key
+	 */
+	private void removeFromDisk(String key)
+	{
+		Spill spill = disk.remove(key);
+		if(spill != null)
+		{
+			diskBytes -= spill.length;
+			spill.file.delete();
+		}
+	}
+
+	/**
+	 *
+	 * @param bitmap
+	 * @return
+	 */
+	private static long getByteCount(Bitmap bitmap)
+	{
+		return (long)bitmap.getRowBytes() * bitmap.getHeight();
+	}
+
+	/**
+	 * spilled file of a bitmap
+	 *
+	 * @author meinside@gmail.com
+	 *
+	 */
+	private static class Spill
+	{
+		final File file;
+		final Bitmap.Config config;
+		final long length;
+
+		public Spill(File file, Bitmap.Config config, long length)
+		{
+			this.file = file;
+			this.config = config;
+			this.length = length;
+		}
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return "hits: " + hits + ", disk hits: " + diskHits + ", misses: " + misses + ", memory: " + bytes + "/" + maxBytes + " bytes, disk: " + diskBytes + "/" + maxDiskBytes + " bytes";
+	}
+}
@@ -16,6 +16,9 @@ import org.andlib.http.HttpUtility;
 import org.andlib.http.SimpleHttpResponse;
 
 import outsourced.image.filter.base.FilterBase;
+import outsourced.image.filter.base.FilterChain;
+import outsourced.image.filter.kernel.PixelBufferPool;
+import outsourced.image.filter.kernel.RowSink;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
@@ -27,13 +30,24 @@ import android.view.View;
  * @author meinside@gmail.com
  * @since 09.10.12.
  * 
- * last update 10.11.05.
+ * last update 26.10.18.
  *
  */
 final public class ImageUtility
 {
 	public static final int READ_BUFFER_SIZE = 32 * 1024;	//32KB
 
+	//one per thread, as a BlurEngine is synchronized (blurs of different threads would wait for each other)
+	private static final ThreadLocal<BlurEngine> blurEngines = new ThreadLocal<BlurEngine>(){
+		@Override
+		protected BlurEngine initialValue()
+		{
+			return new BlurEngine();
+		}
+	};
+
+	private static FilterResultCache filterResultCache = null;
+
 	/**
 	 * 
 	 * @param url
@@ -264,8 +278,83 @@ final public class ImageUtility
 		return null;
 	}
 	
+	/**
+	 * 
+	 * @param width width of the source image
+	 * @param height height of the source image
+	 * @param targetWidth (0 for no limit)
+	 * @param targetHeight (0 for no limit)
+	 * @return largest power of 2 which does not make the image smaller than the target size
+	 */
+	public static int calculateSampleSize(int width, int height, int targetWidth, int targetHeight)
+	{
+		int sampleSize = 1;
+		if(targetWidth <= 0 && targetHeight <= 0)
+			return sampleSize;
+
+		while((targetWidth <= 0 || width / (sampleSize * 2) >= targetWidth) &&
+				(targetHeight <= 0 || height / (sampleSize * 2) >= targetHeight) &&
+				width / (sampleSize * 2) > 0 && height / (sampleSize * 2) > 0)
+		{
+			sampleSize *= 2;
+		}
+		return sampleSize;
+	}
+
+	/**
+	 * decode an encoded image (eg. downloaded bytes) for given target size
+	 * <br>
+	 * <br>
+	 * bounds are read first, and the image is subsampled to the smallest size not smaller than the target.
+	 * opaque formats (JPEG) are decoded as RGB_565, which takes half the memory of ARGB_8888.
+	 * 
+	 * @param data
+	 * @param targetWidth (0 for no limit)
+	 * @param targetHeight (0 for no limit)
+	 * @return null on error
+	 */
+	public static Bitmap decodeSampledBitmap(byte[] data, int targetWidth, int targetHeight)
+	{
+		if(data == null)
+		{
+			Logger.e("parameter error (data null)");
+			return null;
+		}
+
+		try
+		{
+			BitmapFactory.Options options = new BitmapFactory.Options();
+			options.inJustDecodeBounds = true;
+			BitmapFactory.decodeByteArray(data, 0, data.length, options);
+			if(options.outWidth <= 0 || options.outHeight <= 0)
+			{
+				Logger.e("not a decodable image");
+				return null;
+			}
+
+			int sampleSize = calculateSampleSize(options.outWidth, options.outHeight, targetWidth, targetHeight);
+			boolean opaque = "image/jpeg".equals(options.outMimeType);
+
+			options = new BitmapFactory.Options();
+			options.inSampleSize = sampleSize;
+			options.inPreferredConfig = opaque ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+			if(opaque)
+				options.inDither = true;	//(for less banding in 16 bits)
+			return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+		}
+		catch(OutOfMemoryError e)
+		{
+			Logger.e(e.toString());
+		}
+		return null;
+	}
+
 	/**
 	 * apply filter to a bitmap
+	 * <br>
+	 * <br>
+	 * if a {@link FilterResultCache} is set, repeated calls with the same bitmap and filter parameters return the cached result
+	 * (which is shared, so it should not be recycled)
 	 * 
 	 * @param original
 	 * @param filter
@@ -273,112 +362,199 @@ final public class ImageUtility
 	 */
 	public static Bitmap applyFilter(Bitmap original, FilterBase filter)
 	{
-		return filter.filter(original);
+		FilterResultCache cache = filterResultCache;
+		if(cache != null)
+			return cache.applyFilter(original, filter);
+
+		return applyFilters(original, filter);
 	}
-	
+
 	/**
-	 * generate a blurred bitmap from given one
 	 * 
-	 * referenced: http://incubator.quasimondo.com/processing/superfastblur.pde
+	 * @param cache cache for {@link #applyFilter(Bitmap, FilterBase)} (null for no cache)
+	 */
+	public static void setFilterResultCache(FilterResultCache cache)
+	{
+		filterResultCache = cache;
+	}
+
+	/**
+	 * 
+	 * @return cache for {@link #applyFilter(Bitmap, FilterBase)} (null if not set)
+	 */
+	public static FilterResultCache getFilterResultCache()
+	{
+		return filterResultCache;
+	}
+
+	/**
+	 * apply filters to a bitmap, one after another
+	 * <br>
+	 * <br>
+	 * filters are compiled into a {@link FilterChain}, so consecutive point filters take only one pass,
+	 * and no intermediate bitmap is created (pixel buffers are drawn from {@link PixelBufferPool#getShared()})
 	 * 
 	 * @param original
-	 * @param radius
-	 * @return
+	 * @param filters
+	 * @return filtered bitmap (null on error, or if any of the filters cannot filter original, eg. its config)
 	 */
-	public Bitmap getBlurredBitmap(Bitmap original, int radius)
+	public static Bitmap applyFilters(Bitmap original, FilterBase... filters)
 	{
-		if (radius < 1)
+		if(original == null || filters == null || filters.length == 0)
+		{
+			Logger.e("parameter error (bitmap null or no filter)");
 			return null;
+		}
+		for(FilterBase each: filters)
+		{
+			if(each == null)
+			{
+				Logger.e("parameter error (filter null)");
+				return null;
+			}
+			if(!each.isFilterable(original))
+				return null;
+		}
+
+		FilterBase filter = (filters.length == 1) ? filters[0] : new FilterChain("applyFilters", filters);
+		if(filter.getKernel() == null)
+			return filter.filter(original);	//filters which only override filter(Bitmap)
 
 		int width = original.getWidth();
 		int height = original.getHeight();
-		int wm = width - 1;
-		int hm = height - 1;
-		int wh = width * height;
-		int div = radius + radius + 1;
-		int r[] = new int[wh];
-		int g[] = new int[wh];
-		int b[] = new int[wh];
-		int rsum, gsum, bsum, x, y, i, p, p1, p2, yp, yi, yw;
-		int vmin[] = new int[Math.max(width, height)];
-		int vmax[] = new int[Math.max(width,height)];
-		int dv[] = new int[256 * div];
-		for (i=0; i<256*div; i++)
-			dv[i] = i / div;
-
-		int[] blurredBitmap = new int[wh];
-		original.getPixels(blurredBitmap, 0, width, 0, 0, width, height);
-
-		yw = 0;
-		yi = 0;
-
-		for (y=0; y<height; y++)
+
+		PixelBufferPool pool = PixelBufferPool.getShared();
+		int[] pixels = pool.acquire(width * height);
+		original.getPixels(pixels, 0, width, 0, 0, width, height);
+		int[] output = filter.canFilterInPlace() ? pixels : pool.acquire(width * height);
+
+		try
 		{
-			rsum = 0;
-			gsum = 0;
-			bsum = 0;
-			for(i=-radius; i<=radius; i++)
-			{
-				p = blurredBitmap[yi + Math.min(wm, Math.max(i,0))];
-				rsum += (p & 0xff0000) >> 16;
-				gsum += (p & 0x00ff00) >> 8;
-				bsum += p & 0x0000ff;
-			}
-			for (x=0; x<width; x++)
-			{
-				r[yi] = dv[rsum];
-				g[yi] = dv[gsum];
-				b[yi] = dv[bsum];
+			if(!filter.filter(pixels, output, width, height, filter.isAlphaFiltered(original)))
+				return null;
 
-				if(y==0)
-				{
-					vmin[x] = Math.min(x + radius+1,wm);
-					vmax[x] = Math.max(x - radius,0);
-				} 
-				p1 = blurredBitmap[yw + vmin[x]];
-				p2 = blurredBitmap[yw + vmax[x]];
-
-				rsum += ((p1 & 0xff0000)-(p2 & 0xff0000))>>16;
-				gsum += ((p1 & 0x00ff00)-(p2 & 0x00ff00))>>8;
-				bsum += (p1 & 0x0000ff)-(p2 & 0x0000ff);
-				yi ++;
-			}
-			yw += width;
+			return Bitmap.createBitmap(output, 0, width, width, height, original.getConfig());
+		}
+		finally
+		{
+			pool.release(pixels);
+			if(output != pixels)
+				pool.release(output);
 		}
+	}
 
-		for (x=0; x<width; x++)
+	/**
+	 * apply filter to caller-owned pixel buffers (nothing is allocated)
+	 * 
+	 * @param srcPixels ARGB pixels
+	 * @param dstPixels filtered ARGB pixels (can be srcPixels only when filter.canFilterInPlace() is true)
+	 * @param width
+	 * @param height
+	 * @param alpha whether alpha channel is also filtered or not
+	 * @param filter
+	 * @return false on error
+	 */
+	public static boolean applyFilter(int[] srcPixels, int[] dstPixels, int width, int height, boolean alpha, FilterBase filter)
+	{
+		return filter.filter(srcPixels, dstPixels, width, height, alpha);
+	}
+
+	/**
+	 * apply filter to an image file strip by strip, without decoding the whole image at once
+	 * <br>
+	 * <br>
+	 * only a few rows of pixels are kept in memory, so images larger than the available heap can be filtered
+	 * (needs API level 10 or above)
+	 * 
+	 * @param srcPath path of a jpeg or png file
+	 * @param filter
+	 * @param sink receives filtered rows, top-down
+	 * @return false on error
+	 */
+	public static boolean applyFilter(String srcPath, FilterBase filter, RowSink sink)
+	{
+		RegionDecoderRowSource source = null;
+		try
 		{
-			rsum=gsum=bsum=0;
-			yp =- radius * width;
-			for(i=-radius; i<=radius; i++)
-			{
-				yi = Math.max(0,yp) + x;
-				rsum += r[yi];
-				gsum += g[yi];
-				bsum += b[yi];
-				yp += width;
-			}
-			yi = x;
-			for (y=0; y<height; y++)
-			{
-				blurredBitmap[yi] = 0xff000000 | (dv[rsum]<<16) | (dv[gsum]<<8) | dv[bsum];
-				if(x == 0)
-				{
-					vmin[y] = Math.min(y + radius + 1, hm) * width;
-					vmax[y] = Math.max(y - radius, 0) * width;
-				} 
-				p1 = x + vmin[y];
-				p2 = x + vmax[y];
+			source = new RegionDecoderRowSource(srcPath);
+			return filter.filter(source, sink, true);
+		}
+		catch(IOException e)
+		{
+			Logger.e(e.toString());
+		}
+		finally
+		{
+			if(source != null)
+				source.recycle();
+		}
+		return false;
+	}
 
-				rsum += r[p1] - r[p2];
-				gsum += g[p1] - g[p2];
-				bsum += b[p1] - b[p2];
+	/**
+	 * apply filter to an image file strip by strip, directly into a new bitmap
+	 * <br>
+	 * <br>
+	 * neither the source image nor a full int[] copy of it is held in memory, only the resulting bitmap
+	 * (needs API level 10 or above)
+	 * 
+	 * @param srcPath path of a jpeg or png file
+	 * @param filter
+	 * @return filtered bitmap (null on error)
+	 */
+	public static Bitmap applyFilter(String srcPath, FilterBase filter)
+	{
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inJustDecodeBounds = true;
+		BitmapFactory.decodeFile(srcPath, options);
+		if(options.outWidth <= 0 || options.outHeight <= 0)
+		{
+			Logger.e("failed to decode bounds: " + srcPath);
+			return null;
+		}
 
-				yi += width;
-			}
+		Bitmap output = Bitmap.createBitmap(options.outWidth, options.outHeight, Bitmap.Config.ARGB_8888);
+		if(!applyFilter(srcPath, filter, new BitmapRowSink(output)))
+		{
+			output.recycle();
+			return null;
 		}
+		return output;
+	}
+	
+	/**
+	 * generate a blurred bitmap from given one
+	 * 
+	 * referenced: http://incubator.quasimondo.com/processing/superfastblur.pde
+	 * 
+	 * @param original
+	 * @param radius
+	 * @return blurred bitmap in Bitmap.Config.RGB_565
+	 */
+	public Bitmap getBlurredBitmap(Bitmap original, int radius)
+	{
+		return getBlurredBitmap(original, radius, Bitmap.Config.RGB_565);
+	}
+
+	/**
+	 * generate a blurred bitmap from given one, with a {@link BlurEngine} of the calling thread
+	 * <br>
+	 * <br>
+	 * each call allocates a new bitmap. for blurring many times per second (eg. live blur),
+	 * keep your own BlurEngine and use {@link BlurEngine#blur(Bitmap, int, Bitmap)} with a reused output bitmap.
+	 * (calls of the same BlurEngine are serialized, so use one engine per thread for concurrent blurs)
+	 * 
+	 * @param original
+	 * @param radius
+	 * @param config Bitmap.Config.RGB_565 or Bitmap.Config.ARGB_8888 (alpha channel is also blurred and kept)
+	 * @return null on error
+	 */
+	public static Bitmap getBlurredBitmap(Bitmap original, int radius, Bitmap.Config config)
+	{
+		if (radius < 1)
+			return null;
 
-		return Bitmap.createBitmap(blurredBitmap, width, height, Bitmap.Config.RGB_565);
+		return blurEngines.get().blur(original, radius, config);
 	}
 
 	/**
@@ -0,0 +1,512 @@
+package org.andlib.helpers.image;
+
+import org.andlib.helpers.Logger;
+
+import outsourced.image.filter.base.FilterBase;
+import outsourced.image.filter.base.FilterChain;
+import android.graphics.ImageFormat;
+import android.hardware.Camera;
+
+/**
+ * filters camera preview frames on a dedicated worker thread
+ * <br>
+ * <br>
+ * - frames are received into a few recycled callback buffers (no per-frame allocation by the camera)<br>
+ * - only the latest frame waits for the worker: when a newer frame arrives, the waiting one is dropped and its buffer given back<br>
+ * - each frame is converted from NV21 to ARGB (or only its luma plane to gray), filtered, and handed to {@link PreviewFrameListener}<br>
+ * - in luma-only mode, filters which support luma planes (see {@link FilterBase#isLumaFilterable()}) filter the Y plane directly,
+ *   and only the result is expanded to gray pixels<br>
+ * - frames per second and average latency of each stage are measured
+ *
+ * @author meinside@gmail.com
+ * @since 26.10.18.
+ *
+ * last update 26.10.18.
+ *
+ */
+public class PreviewFilterPipeline implements Camera.PreviewCallback
+{
+	public static final int DEFAULT_CALLBACK_BUFFERS = 3;
+
+	private static final float LATENCY_WEIGHT = 0.1f;	//weight of the newest sample in moving averages
+
+	private FilterBase filter;
+	private PreviewFrameListener listener;
+	private volatile boolean lumaOnly = false;
+
+	private Camera camera = null;
+	private int width = 0;
+	private int height = 0;
+
+	//frame waiting for the worker (guarded by lock)
+	private final Object lock = new Object();
+	private byte[] pendingFrame = null;
+	private long pendingTime = 0;
+	private boolean stopping = false;
+	private volatile Thread worker = null;
+
+	//pixel buffers of the worker
+	private int[] pixels = null;
+	private int[] filtered = null;
+	private byte[] luma = null;
+
+	//statistics (guarded by lock)
+	private long frameCount = 0;
+	private long droppedCount = 0;
+	private float fps = 0;
+	private long fpsWindowStart = 0;
+	private int fpsWindowFrames = 0;
+	private float waitMillis = 0;
+	private float convertMillis = 0;
+	private float filterMillis = 0;
+	private float deliverMillis = 0;
+
+	/**
+	 *
+	 * @param listener
+	 * @param filters applied one after another (no filter: frames are only converted)
+	 */
+	public PreviewFilterPipeline(PreviewFrameListener listener, FilterBase... filters)
+	{
+		this.listener = listener;
+		if(filters != null && filters.length == 1)
+			filter = filters[0];
+		else if(filters != null && filters.length > 1)
+			filter = new FilterChain("PreviewFilterPipeline", filters);
+	}
+
+	/**
+	 * @return whether only luma plane is converted (to gray pixels) or not
+	 */
+	public boolean isLumaOnly()
+	{
+		return lumaOnly;
+	}
+
+	/**
+	 * convert only luma plane of frames, for filters which need only luminance
+	 *
+	 * @param lumaOnly
+	 */
+	public void setLumaOnly(boolean lumaOnly)
+	{
+		this.lumaOnly = lumaOnly;
+	}
+
+	/**
+	 * start receiving preview frames of given camera
+	 * <br>
+	 * (preview size should be set before, and preview format should be NV21)
+	 *
+	 * @param camera
+	 * @return false on error
+	 */
+	public synchronized boolean attach(Camera camera)
+	{
+		detach();
+
+		try
+		{
+			Camera.Parameters params = camera.getParameters();
+			if(params.getPreviewFormat() != ImageFormat.NV21)
+			{
+				Logger.e("preview format not supported: " + params.getPreviewFormat());
+				return false;
+			}
+
+			Camera.Size size = params.getPreviewSize();
+			width = size.width;
+			height = size.height;
+
+			int frameSize = YuvUtility.getNv21FrameSize(width, height);
+			for(int i=0; i<DEFAULT_CALLBACK_BUFFERS; i++)
+				camera.addCallbackBuffer(new byte[frameSize]);
+			camera.setPreviewCallbackWithBuffer(this);
+		}
+		catch(Exception e)
+		{
+			Logger.e(e.toString());
+			return false;
+		}
+
+		this.camera = camera;
+		resetStatistics();
+
+		synchronized(lock)
+		{
+			stopping = false;
+		}
+
+		worker = new Thread(new Runnable(){
+			public void run()
+			{
+				work();
+			}
+		}, "PreviewFilterPipeline");
+		worker.start();
+
+		return true;
+	}
+
+	/**
+	 * stop receiving preview frames
+	 */
+	public synchronized void detach()
+	{
+		if(camera != null)
+		{
+			try
+			{
+				camera.setPreviewCallbackWithBuffer(null);
+			}
+			catch(Exception e)
+			{
+				Logger.e(e.toString());
+			}
+			camera = null;
+		}
+
+		if(worker != null)
+		{
+			//(not interrupted: filters running in parallel bands would fail with it)
+			synchronized(lock)
+			{
+				stopping = true;
+				lock.notify();
+			}
+			try
+			{
+				worker.join();
+			}
+			catch(InterruptedException e)
+			{
+				Logger.e(e.toString());
+			}
+			worker = null;
+		}
+
+		synchronized(lock)
+		{
+			pendingFrame = null;
+		}
+		pixels = filtered = null;
+		luma = null;
+	}
+
+	/**
+	 * (called on the thread which opened the camera)
+	 */
+	public void onPreviewFrame(byte[] data, Camera camera)
+	{
+		if(data == null)
+			return;
+
+		byte[] stale = null;
+		synchronized(lock)
+		{
+			if(worker == null)
+				return;
+
+			stale = pendingFrame;
+			pendingFrame = data;
+			pendingTime = System.nanoTime();
+			if(stale != null)
+				droppedCount ++;
+
+			lock.notify();
+		}
+
+		//give the stale frame's buffer back to the camera
+		if(stale != null)
+			camera.addCallbackBuffer(stale);
+	}
+
+	/**
+	 * loop of the worker thread
+	 */
+	private void work()
+	{
+		Camera camera = this.camera;
+		int width = this.width, height = this.height;
+		byte[] frame;
+		long received;
+
+		try
+		{
+			while(true)
+			{
+				synchronized(lock)
+				{
+					while(pendingFrame == null && !stopping)
+						lock.wait();
+					if(stopping)
+						break;	//detached
+
+					frame = pendingFrame;
+					received = pendingTime;
+					pendingFrame = null;
+				}
+
+				try
+				{
+					process(camera, width, height, frame, received);
+				}
+				catch(RuntimeException e)
+				{
+					Logger.e(e.toString());	//(only this frame is dropped)
+				}
+			}
+		}
+		catch(InterruptedException e)
+		{
+			Logger.e(e.toString());
+		}
+	}
+
+	/**
+	 * convert, filter, and deliver a frame (its buffer is always given back to the camera)
+	 *
+	 * @param camera
+	 * @param width
+	 * @param height
+	 * @param frame
+	 * @param received
+	 */
+	private void process(Camera camera, int width, int height, byte[] frame, long received)
+	{
+		long start, converted, filteredTime, delivered;
+
+		start = System.nanoTime();
+		if(pixels == null)
+			pixels = new int[width * height];
+
+		//luma plane: filter Y values directly, and convert only the result
+		if(lumaOnly && filter != null && filter.isLumaFilterable())
+		{
+			if(luma == null)
+				luma = new byte[width * height];
+			boolean ok;
+			try
+			{
+				ok = filter.filterLuma(frame, luma, width, height);
+			}
+			finally
+			{
+				camera.addCallbackBuffer(frame);
+			}
+			if(!ok)
+				return;
+			filteredTime = System.nanoTime();
+
+			YuvUtility.lumaToArgb(luma, width, height, pixels);
+			converted = System.nanoTime();
+
+			if(listener != null)
+				listener.onPreviewFrameFiltered(pixels, width, height);	//call back
+			delivered = System.nanoTime();
+
+			updateStatistics(start - received, converted - filteredTime, filteredTime - start, delivered - converted, delivered);
+			return;
+		}
+
+		//stage 1: convert (and give the buffer back to the camera right away)
+		boolean ok;
+		try
+		{
+			ok = lumaOnly ? YuvUtility.lumaToArgb(frame, width, height, pixels) : YuvUtility.nv21ToArgb(frame, width, height, pixels);
+		}
+		finally
+		{
+			camera.addCallbackBuffer(frame);
+		}
+		if(!ok)
+			return;
+		converted = System.nanoTime();
+
+		//stage 2: filter
+		int[] output = pixels;
+		if(filter != null)
+		{
+			if(!filter.canFilterInPlace())
+			{
+				if(filtered == null)
+					filtered = new int[width * height];
+				output = filtered;
+			}
+
+			if(!filter.filter(pixels, output, width, height, false))
+				return;
+		}
+		filteredTime = System.nanoTime();
+
+		//stage 3: deliver
+		if(listener != null)
+			listener.onPreviewFrameFiltered(output, width, height);	//call back
+		delivered = System.nanoTime();
+
+		updateStatistics(start - received, converted - start, filteredTime - converted, delivered - filteredTime, delivered);
+	}
+
+	/**
+	 *
+	 * @param wait
+	 * @param convert
+	 * @param filter
+	 * @param deliver
+	 * @param now
+	 */
+	private void updateStatistics(long wait, long convert, long filter, long deliver, long now)
+	{
+		synchronized(lock)
+		{
+			if(frameCount == 0)
+			{
+				waitMillis = wait / 1000000f;
+				convertMillis = convert / 1000000f;
+				filterMillis = filter / 1000000f;
+				deliverMillis = deliver / 1000000f;
+			}
+			else
+			{
+				waitMillis += (wait / 1000000f - waitMillis) * LATENCY_WEIGHT;
+				convertMillis += (convert / 1000000f - convertMillis) * LATENCY_WEIGHT;
+				filterMillis += (filter / 1000000f - filterMillis) * LATENCY_WEIGHT;
+				deliverMillis += (deliver / 1000000f - deliverMillis) * LATENCY_WEIGHT;
+			}
+			frameCount ++;
+
+			//frames per second, over windows of about a second
+			fpsWindowFrames ++;
+			if(fpsWindowStart == 0)
+			{
+				fpsWindowStart = now;
+			}
+			else if(now - fpsWindowStart >= 1000000000L)
+			{
+				fps = fpsWindowFrames * 1000000000f / (now - fpsWindowStart);
+				fpsWindowStart = now;
+				fpsWindowFrames = 0;
+			}
+		}
+	}
+
+	/**
+	 * reset frame counts and averages
+	 */
+	public void resetStatistics()
+	{
+		synchronized(lock)
+		{
+			frameCount = droppedCount = 0;
+			fps = 0;
+			fpsWindowStart = 0;
+			fpsWindowFrames = 0;
+			waitMillis = convertMillis = filterMillis = deliverMillis = 0;
+		}
+	}
+
+	/**
+	 * @return number of processed frames
+	 */
+	public long getFrameCount()
+	{
+		synchronized(lock)
+		{
+			return frameCount;
+		}
+	}
+
+	/**
+	 * @return number of frames dropped for newer ones
+	 */
+	public long getDroppedCount()
+	{
+		synchronized(lock)
+		{
+			return droppedCount;
+		}
+	}
+
+	/**
+	 * @return processed frames per second (measured over the last second)
+	 */
+	public float getFramesPerSecond()
+	{
+		synchronized(lock)
+		{
+			return fps;
+		}
+	}
+
+	/**
+	 * @return average time (in milliseconds) frames waited for the worker
+	 */
+	public float getWaitMillis()
+	{
+		synchronized(lock)
+		{
+			return waitMillis;
+		}
+	}
+
+	/**
+	 * @return average time (in milliseconds) of NV21 conversion
+	 */
+	public float getConvertMillis()
+	{
+		synchronized(lock)
+		{
+			return convertMillis;
+		}
+	}
+
+	/**
+	 * @return average time (in milliseconds) of filtering
+	 */
+	public float getFilterMillis()
+	{
+		synchronized(lock)
+		{
+			return filterMillis;
+		}
+	}
+
+	/**
+	 * @return average time (in milliseconds) of {@link PreviewFrameListener#onPreviewFrameFiltered(int[], int, int)}
+	 */
+	public float getDeliverMillis()
+	{
+		synchronized(lock)
+		{
+			return deliverMillis;
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		synchronized(lock)
+		{
+			return String.format("%.1f fps, frames: %d, dropped: %d, wait: %.1fms, convert: %.1fms, filter: %.1fms, deliver: %.1fms",
+					fps, frameCount, droppedCount, waitMillis, convertMillis, filterMillis, deliverMillis);
+		}
+	}
+
+	/**
+	 * for receiving filtered frames
+	 *
+	 * @author meinside@gmail.com
+	 *
+	 */
+	public interface PreviewFrameListener
+	{
+		/**
+		 * called on the worker thread for each filtered frame
+		 *
+		 * @param pixels ARGB pixels (width * height), reused for the next frame (so should not be kept after returning)
+		 * @param width
+		 * @param height
+		 */
+		public void onPreviewFrameFiltered(int[] pixels, int width, int height);
+	}
+}
@@ -0,0 +1,249 @@
+package org.andlib.helpers.image;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.andlib.helpers.Logger;
+
+import outsourced.image.filter.base.FilterBase;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * filters a bitmap progressively: a downscaled result first, then larger ones up to the full resolution
+ * <br>
+ * <br>
+ * - first level fits in previewSize x previewSize, and each following level doubles it, until the original size<br>
+ * - each level is filtered on a background thread and delivered to {@link ProgressListener} on the main thread<br>
+ * - a new request (or {@link #cancel()}) cancels refinement of the previous one: its remaining levels are skipped,
+ *   and results not yet delivered are recycled
+ * <br>
+ * <br>
+ * (a level already being filtered is not interrupted, so a new request starts after it)
+ *
+ * @author meinside@gmail.com
+ * @since 26.10.18.
+ *
+ * last update 26.10.18.
+ *
+ */
+public class ProgressiveFilter
+{
+	public static final int DEFAULT_PREVIEW_SIZE = 512;
+
+	private int previewSize;
+
+	private ExecutorService executor;
+	private Handler handler = new Handler(Looper.getMainLooper());
+
+	private AtomicInteger generation = new AtomicInteger(0);	//id of the latest request
+	private Future<?> current = null;
+
+	/**
+	 *
+	 */
+	public ProgressiveFilter()
+	{
+		this(DEFAULT_PREVIEW_SIZE);
+	}
+
+	/**
+	 *
+	 * @param previewSize max width and height of the first level
+	 */
+	public ProgressiveFilter(int previewSize)
+	{
+		this.previewSize = Math.max(1, previewSize);
+
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory(){
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "ProgressiveFilter");
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * start filtering given bitmap progressively (previous request is cancelled)
+	 *
+	 * @param original
+	 * @param filter
+	 * @param listener
+	 * @return false on parameter error
+	 */
+	public synchronized boolean request(final Bitmap original, final FilterBase filter, final ProgressListener listener)
+	{
+		if(original == null || filter == null || listener == null)
+		{
+			Logger.e("parameter error (bitmap, filter, or listener null)");
+			return false;
+		}
+
+		cancel();
+
+		final int id = generation.get();
+		current = executor.submit(new Runnable(){
+			public void run()
+			{
+				process(id, original, filter, listener);
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * cancel refinement of the current request
+	 */
+	public synchronized void cancel()
+	{
+		generation.incrementAndGet();
+
+		if(current != null)
+		{
+			current.cancel(false);
+			current = null;
+		}
+	}
+
+	/**
+	 * cancel the current request and stop the background thread (this object cannot be used afterwards)
+	 */
+	public synchronized void shutdown()
+	{
+		cancel();
+		executor.shutdown();
+	}
+
+	/**
+	 *
+	 * @param width
+	 * @param height
+	 * @return {width, height} of each level, smallest first
+	 */
+	public List<int[]> getLevelSizes(int width, int height)
+	{
+		List<int[]> sizes = new ArrayList<int[]>();
+		int longest = Math.max(width, height);
+		for(int size=previewSize; size<longest; size*=2)
+			sizes.add(new int[]{Math.max(1, width * size / longest), Math.max(1, height * size / longest)});
+		sizes.add(new int[]{width, height});
+		return sizes;
+	}
+
+	/**
+	 * filter levels of a request (on the background thread)
+	 *
+	 * @param id
+	 * @param original
+	 * @param filter
+	 * @param listener
+	 */
+	private void process(int id, Bitmap original, FilterBase filter, ProgressListener listener)
+	{
+		List<int[]> sizes = getLevelSizes(original.getWidth(), original.getHeight());
+		for(int level=0; level<sizes.size(); level++)
+		{
+			if(generation.get() != id)
+				return;	//cancelled
+
+			int[] size = sizes.get(level);
+			boolean last = (level == sizes.size() - 1);
+
+			Bitmap result = null;
+			try
+			{
+				Bitmap input = last ? original : ImageUtility.getResizedBitmap(original, size[0], size[1]);
+				if(input != null)
+				{
+					result = ImageUtility.applyFilters(input, filter);	//(not cached: results are owned by the listener)
+					if(input != original)
+						input.recycle();
+				}
+			}
+			catch(OutOfMemoryError e)
+			{
+				Logger.e(e.toString());
+			}
+
+			if(result == null)
+			{
+				deliverFailure(id, level, listener);
+				return;
+			}
+			deliver(id, result, level, last, listener);
+		}
+	}
+
+	/**
+	 *
+	 * @param id
+	 * @param result
+	 * @param level
+	 * @param last
+	 * @param listener
+	 */
+	private void deliver(final int id, final Bitmap result, final int level, final boolean last, final ProgressListener listener)
+	{
+		handler.post(new Runnable(){
+			public void run()
+			{
+				if(generation.get() != id)
+				{
+					result.recycle();	//cancelled
+					return;
+				}
+				listener.onLevelFiltered(result, level, last);	//call back
+			}
+		});
+	}
+
+	/**
+	 *
+	 * @param id
+	 * @param level
+	 * @param listener
+	 */
+	private void deliverFailure(final int id, final int level, final ProgressListener listener)
+	{
+		handler.post(new Runnable(){
+			public void run()
+			{
+				if(generation.get() == id)
+					listener.onFilterFailed(level);	//call back
+			}
+		});
+	}
+
+	/**
+	 * for receiving filtered levels (called on the main thread)
+	 *
+	 * @author meinside@gmail.com
+	 *
+	 */
+	public interface ProgressListener
+	{
+		/**
+		 * called for each level, smallest first
+		 *
+		 * @param filtered filtered bitmap of this level (owned by the listener)
+		 * @param level 0 ~
+		 * @param last true if filtered is of the original size
+		 */
+		public void onLevelFiltered(Bitmap filtered, int level, boolean last);
+
+		/**
+		 * called when a level failed to be filtered (following levels are not filtered)
+		 *
+		 * @param level
+		 */
+		public void onFilterFailed(int level);
+	}
+}
@@ -0,0 +1,84 @@
+package org.andlib.helpers.image;
+
+import java.io.IOException;
+
+import outsourced.image.filter.kernel.RowSource;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+
+/**
+ * reads rows of an image file with BitmapRegionDecoder, so that the whole image is never decoded at once
+ * <br>
+ * <br>
+ * (needs API level 10 or above)
+ * 
+ * @author meinside@gmail.com
+ * @since 26.10.18.
+ * 
+ * last update 26.10.18.
+ *
+ */
+public class RegionDecoderRowSource implements RowSource
+{
+	private BitmapRegionDecoder decoder;
+	private BitmapFactory.Options options;
+	private Rect region = new Rect();
+
+	/**
+	 * 
+	 * @param path path of a jpeg or png file
+	 * @throws IOException
+	 */
+	public RegionDecoderRowSource(String path) throws IOException
+	{
+		this(BitmapRegionDecoder.newInstance(path, false));
+	}
+
+	/**
+	 * 
+	 * @param decoder
+	 */
+	public RegionDecoderRowSource(BitmapRegionDecoder decoder)
+	{
+		this.decoder = decoder;
+
+		options = new BitmapFactory.Options();
+		options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+	}
+
+	@Override
+	public int getWidth()
+	{
+		return decoder.getWidth();
+	}
+
+	@Override
+	public int getHeight()
+	{
+		return decoder.getHeight();
+	}
+
+	@Override
+	public void readRows(int fromY, int rows, int[] pixels, int offset) throws IOException
+	{
+		int width = decoder.getWidth();
+
+		region.set(0, fromY, width, fromY + rows);
+		Bitmap strip = decoder.decodeRegion(region, options);
+		if(strip == null)
+			throw new IOException("failed to decode rows " + fromY + " ~ " + (fromY + rows - 1));
+
+		strip.getPixels(pixels, offset, width, 0, 0, width, rows);
+		strip.recycle();
+	}
+
+	/**
+	 * release the decoder
+	 */
+	public void recycle()
+	{
+		decoder.recycle();
+	}
+}
@@ -0,0 +1,127 @@
+package org.andlib.helpers.image;
+
+import org.andlib.helpers.Logger;
+
+/**
+ * conversions of NV21 (YCrCb 4:2:0, default format of camera preview frames)
+ * <br>
+ * <br>
+ * NV21 frame is a plane of width * height luma (Y) bytes, followed by (width/2) * (height/2) interleaved V/U byte pairs.
+ * <br>
+ * <br>
+ * referenced: ITU-R BT.601 (integer approximation of video-range YCbCr)
+ *
+ * @author meinside@gmail.com
+ * @since 26.10.18.
+ *
+ * last update 26.10.18.
+ *
+ */
+final public class YuvUtility
+{
+	private YuvUtility(){}
+
+	/**
+	 *
+	 * @param width
+	 * @param height
+	 * @return size of a NV21 frame in bytes
+	 */
+	public static int getNv21FrameSize(int width, int height)
+	{
+		return width * height + ((width + 1) / 2) * ((height + 1) / 2) * 2;
+	}
+
+	/**
+	 * convert NV21 frame to ARGB pixels
+	 *
+	 * @param nv21
+	 * @param width
+	 * @param height
+	 * @param argb converted pixels (width * height) are stored here
+	 * @return false on parameter error
+	 */
+	public static boolean nv21ToArgb(byte[] nv21, int width, int height, int[] argb)
+	{
+		if(!checkParameters(nv21, width, height, argb))
+			return false;
+
+		int frameSize = width * height;
+		int chromaWidth = (width + 1) / 2 * 2;
+		int x, y, p, uv, luma, u = 0, v = 0, r, g, b;
+		for(y=0, p=0; y<height; y++)
+		{
+			uv = frameSize + (y >> 1) * chromaWidth;
+			for(x=0; x<width; x++, p++)
+			{
+				luma = (nv21[p] & 0xFF) - 16;
+				if(luma < 0)
+					luma = 0;
+				luma *= 1192;
+
+				if((x & 1) == 0)
+				{
+					v = (nv21[uv++] & 0xFF) - 128;
+					u = (nv21[uv++] & 0xFF) - 128;
+				}
+
+				//fixed-point (10 bits) results, clamped to 0 ~ 2^18-1
+				r = luma + 1634 * v;
+				g = luma - 833 * v - 400 * u;
+				b = luma + 2066 * u;
+				r = (r < 0) ? 0 : (r > 262143 ? 262143 : r);
+				g = (g < 0) ? 0 : (g > 262143 ? 262143 : g);
+				b = (b < 0) ? 0 : (b > 262143 ? 262143 : b);
+
+				argb[p] = 0xFF000000 | ((r << 6) & 0xFF0000) | ((g >> 2) & 0xFF00) | ((b >> 10) & 0xFF);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * convert a luma (Y) plane, eg. of NV21 frame, to gray ARGB pixels (chroma is not read at all)
+	 *
+	 * @param luma NV21 frame, or only its luma plane (width * height)
+	 * @param width
+	 * @param height
+	 * @param argb converted pixels (width * height) are stored here
+	 * @return false on parameter error
+	 */
+	public static boolean lumaToArgb(byte[] luma, int width, int height, int[] argb)
+	{
+		if(luma == null || argb == null || width <= 0 || height <= 0 ||
+			luma.length < width * height || argb.length < width * height)
+		{
+			Logger.e("parameter error (luma or pixels null or too small)");
+			return false;
+		}
+
+		int y;
+		for(int p=0; p<width*height; p++)
+		{
+			y = luma[p] & 0xFF;
+			argb[p] = 0xFF000000 | (y << 16) | (y << 8) | y;
+		}
+		return true;
+	}
+
+	/**
+	 *
+	 * @param nv21
+	 * @param width
+	 * @param height
+	 * @param argb
+	 * @return false (with error log) on parameter error
+	 */
+	private static boolean checkParameters(byte[] nv21, int width, int height, int[] argb)
+	{
+		if(nv21 == null || argb == null || width <= 0 || height <= 0 ||
+			nv21.length < getNv21FrameSize(width, height) || argb.length < width * height)
+		{
+			Logger.e("parameter error (frame or pixels null or too small)");
+			return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,185 @@
+package org.andlib.http;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+
+/**
+ * one http client shared by threads, which keeps connections alive and reuses them
+ * <br>
+ * <br>
+ * - connections are pooled by a thread-safe connection manager, limited per host (route) and in total<br>
+ * - requests beyond the limits wait for a connection to be released (up to the connection timeout)<br>
+ * - entity of every response should be consumed (or the request aborted), so that its connection goes back to the pool<br>
+ * - the client should not be shut down by users: call {@link #shutdown()} instead
+ * <br>
+ * <br>
+ * limits and timeouts should be set before the first {@link #getClient()} (or after {@link #shutdown()}).
+ *
+ * @author meinside@gmail.com
+ * @since 26.10.18.
+ *
+ * last update 26.10.18.
+ *
+ */
+final public class SharedHttpClient
+{
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 4;
+	public static final int DEFAULT_MAX_CONNECTIONS = 16;
+
+	private static DefaultHttpClient client = null;
+
+	private static int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+	private static int maxConnections = DEFAULT_MAX_CONNECTIONS;
+	private static int connectionTimeoutMillis = 10000;
+	private static int socketTimeoutMillis = 10000;
+	private static String userAgent = "Android";
+
+	private SharedHttpClient(){}
+
+	/**
+	 *
+	 * @return shared client (created on the first call)
+	 */
+	public static synchronized DefaultHttpClient getClient()
+	{
+		if(client == null)
+		{
+			HttpParams params = new BasicHttpParams();
+			HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
+			HttpProtocolParams.setUserAgent(params, userAgent);
+			HttpConnectionParams.setConnectionTimeout(params, connectionTimeoutMillis);
+			HttpConnectionParams.setSoTimeout(params, socketTimeoutMillis);
+			HttpConnectionParams.setStaleCheckingEnabled(params, true);
+			HttpConnectionParams.setSocketBufferSize(params, 8192);
+
+			ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(maxConnectionsPerHost));
+			ConnManagerParams.setMaxTotalConnections(params, maxConnections);
+			ConnManagerParams.setTimeout(params, connectionTimeoutMillis);	//for waiting a pooled connection
+
+			SchemeRegistry registry = new SchemeRegistry();
+			registry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+			registry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+
+			client = new DefaultHttpClient(new ThreadSafeClientConnManager(params, registry), params);
+		}
+		return client;
+	}
+
+	/**
+	 * close connections which have been idle for given time
+	 *
+	 * @param idleSeconds
+	 */
+	public static synchronized void closeIdleConnections(long idleSeconds)
+	{
+		if(client != null)
+			client.getConnectionManager().closeIdleConnections(idleSeconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * close all connections (a new client is created on the next {@link #getClient()})
+	 */
+	public static synchronized void shutdown()
+	{
+		if(client != null)
+		{
+			ClientConnectionManager manager = client.getConnectionManager();
+			client = null;
+			manager.shutdown();
+		}
+	}
+
+	/**
+	 * @return the maxConnectionsPerHost
+	 */
+	public static synchronized int getMaxConnectionsPerHost()
+	{
+		return maxConnectionsPerHost;
+	}
+
+	/**
+	 * @param maxConnectionsPerHost the maxConnectionsPerHost to set
+	 */
+	public static synchronized void setMaxConnectionsPerHost(int maxConnectionsPerHost)
+	{
+		SharedHttpClient.maxConnectionsPerHost = maxConnectionsPerHost;
+	}
+
+	/**
+	 * @return the maxConnections
+	 */
+	public static synchronized int getMaxConnections()
+	{
+		return maxConnections;
+	}
+
+	/**
+	 * @param maxConnections the maxConnections to set
+	 */
+	public static synchronized void setMaxConnections(int maxConnections)
+	{
+		SharedHttpClient.maxConnections = maxConnections;
+	}
+
+	/**
+	 * @return the connectionTimeoutMillis
+	 */
+	public static synchronized int getConnectionTimeoutMillis()
+	{
+		return connectionTimeoutMillis;
+	}
+
+	/**
+	 * @param connectionTimeoutMillis the connectionTimeoutMillis to set
+	 */
+	public static synchronized void setConnectionTimeoutMillis(int connectionTimeoutMillis)
+	{
+		SharedHttpClient.connectionTimeoutMillis = connectionTimeoutMillis;
+	}
+
+	/**
+	 * @return the socketTimeoutMillis
+	 */
+	public static synchronized int getSocketTimeoutMillis()
+	{
+		return socketTimeoutMillis;
+	}
+
+	/**
+	 * @param socketTimeoutMillis the socketTimeoutMillis to set
+	 */
+	public static synchronized void setSocketTimeoutMillis(int socketTimeoutMillis)
+	{
+		SharedHttpClient.socketTimeoutMillis = socketTimeoutMillis;
+	}
+
+	/**
+	 * @return the userAgent
+	 */
+	public static synchronized String getUserAgent()
+	{
+		return userAgent;
+	}
+
+	/**
+	 * @param userAgent the userAgent to set
+	 */
+	public static synchronized void setUserAgent(String userAgent)
+	{
+		SharedHttpClient.userAgent = userAgent;
+	}
+}
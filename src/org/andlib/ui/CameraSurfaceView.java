@@ -2,6 +2,7 @@ package org.andlib.ui;
 
 import org.andlib.helpers.Logger;
 import org.andlib.helpers.image.ImageUtility;
+import org.andlib.helpers.image.PreviewFilterPipeline;
 
 import android.content.Context;
 import android.graphics.ImageFormat;
@@ -13,11 +14,14 @@ import android.view.SurfaceView;
 
 /**
  * surface view for capturing photos through camera
+ * <br>
+ * <br>
+ * preview frames can be filtered on a worker thread with {@link #setPreviewFilterPipeline(PreviewFilterPipeline)}
  * 
  * @author meinside@gmail.com
  * @since 10.03.17.
  * 
- * last update 12.11.20.
+ * last update 26.10.18.
  *
  */
 public abstract class CameraSurfaceView extends SurfaceView implements SurfaceHolder.Callback, Camera.PictureCallback, Camera.ShutterCallback, Camera.PreviewCallback
@@ -25,6 +29,8 @@ public abstract class CameraSurfaceView extends SurfaceView implements SurfaceHo
 	private static SurfaceHolder holder = null;
 	protected static Camera camera = null;
 
+	private PreviewFilterPipeline pipeline = null;
+
 	/**
 	 * 
 	 * @param context
@@ -92,6 +98,9 @@ public abstract class CameraSurfaceView extends SurfaceView implements SurfaceHo
 
 		camera.setParameters(params);
 
+		if(pipeline != null)
+			pipeline.attach(camera);
+
 		camera.startPreview();
 	}
 
@@ -114,6 +123,9 @@ public abstract class CameraSurfaceView extends SurfaceView implements SurfaceHo
 	{
 		Logger.v("surfaceDestroyed");
 		
+		if(pipeline != null)
+			pipeline.detach();
+
 		if(camera != null)
 		{
 			camera.stopPreview();
@@ -122,6 +134,31 @@ public abstract class CameraSurfaceView extends SurfaceView implements SurfaceHo
 		}
 	}
 
+	/**
+	 * filter preview frames with given pipeline (instead of calling {@link #onPreviewFrame(byte[], Camera)})
+	 * 
+	 * @param pipeline null for detaching current one
+	 */
+	public void setPreviewFilterPipeline(PreviewFilterPipeline pipeline)
+	{
+		if(this.pipeline != null)
+			this.pipeline.detach();
+
+		this.pipeline = pipeline;
+
+		if(pipeline != null && camera != null)
+			pipeline.attach(camera);
+	}
+
+	/**
+	 * 
+	 * @return current preview filter pipeline (null if none)
+	 */
+	public PreviewFilterPipeline getPreviewFilterPipeline()
+	{
+		return pipeline;
+	}
+
 	/**
 	 * 
 	 * @return
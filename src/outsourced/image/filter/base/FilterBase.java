@@ -1,24 +1,311 @@
 package outsourced.image.filter.base;
 
+import java.io.IOException;
+
 import org.andlib.helpers.Logger;
 
+import outsourced.image.filter.kernel.PixelBufferPool;
+import outsourced.image.filter.kernel.PixelKernel;
+import outsourced.image.filter.kernel.RowSink;
+import outsourced.image.filter.kernel.RowSource;
+
 import android.graphics.Bitmap;
+import android.graphics.Rect;
 
 /**
  * 
  * ported from: http://www.gdargaud.net/Hack/SourceCode.html#GraphicFilter
  * 
- * XXX: needs optimization
+ * android.graphics.Bitmap adapter of {@link PixelKernel}s
+ * <br>
+ * <br>
+ * subclasses override {@link #getKernel()}, or (as before kernels were introduced) only {@link #filter(Bitmap)}.
+ * without a kernel, only {@link #filter(Bitmap)} works: filtering pixel arrays, luma planes, rows, and regions fails.
  * 
  * @author meinside@gmail.com
  * @since 10.03.05.
  * 
- * last update 10.04.13.
+ * last update 26.10.18.
  */
 public abstract class FilterBase
 {
-	abstract public Bitmap filter(Bitmap bitmap);
-	
+	/**
+	 * 
+	 * @return android-independent kernel which does the actual work (null if this filter only overrides {@link #filter(Bitmap)})
+	 */
+	public PixelKernel getKernel()
+	{
+		return null;
+	}
+
+	/**
+	 * filter given pixels into dstPixels, without allocating any bitmap or pixel buffer
+	 * 
+	 * @param srcPixels ARGB pixels (width * height)
+	 * @param dstPixels filtered ARGB pixels (width * height), can be the same array as srcPixels only when {@link #canFilterInPlace()} is true
+	 * @param width
+	 * @param height
+	 * @param alpha whether alpha channel is also filtered or not
+	 * @return false on parameter error
+	 */
+	public boolean filter(int[] srcPixels, int[] dstPixels, int width, int height, boolean alpha)
+	{
+		PixelKernel kernel = getKernel();
+		if(kernel == null)
+		{
+			Logger.e("no kernel (only filter(Bitmap) is implemented)");
+			return false;
+		}
+
+		Logger.v(kernel.toString());
+
+		try
+		{
+			kernel.apply(srcPixels, dstPixels, width, height, alpha);
+			return true;
+		}
+		catch(IllegalArgumentException e)
+		{
+			Logger.e(e.getMessage());
+		}
+		return false;
+	}
+
+	/**
+	 * filter a luma (Y) plane directly, eg. of a NV21 camera frame, without any color conversion (see {@link PixelKernel#applyLuma(byte[], byte[], int, int)})
+	 * 
+	 * @param srcLuma luma values (width * height)
+	 * @param dstLuma filtered luma values (width * height), can be the same array as srcLuma only when {@link #canFilterInPlace()} is true
+	 * @param width
+	 * @param height
+	 * @return false on parameter error, or if this filter does not support luma planes
+	 */
+	public boolean filterLuma(byte[] srcLuma, byte[] dstLuma, int width, int height)
+	{
+		PixelKernel kernel = getKernel();
+		if(kernel == null)
+		{
+			Logger.e("no kernel (only filter(Bitmap) is implemented)");
+			return false;
+		}
+
+		Logger.v(kernel.toString() + " (luma)");
+
+		try
+		{
+			kernel.applyLuma(srcLuma, dstLuma, width, height);
+			return true;
+		}
+		catch(IllegalArgumentException e)
+		{
+			Logger.e(e.getMessage());
+		}
+		return false;
+	}
+
+	/**
+	 * 
+	 * @return true if this filter keeps gray pixels gray, so that {@link #filterLuma(byte[], byte[], int, int)} can be used
+	 */
+	public boolean isLumaFilterable()
+	{
+		PixelKernel kernel = getKernel();
+		return kernel != null && kernel.isLumaSupported();
+	}
+
+	/**
+	 * filter rows from source into sink strip by strip, keeping only a few rows in memory (see {@link PixelKernel#apply(RowSource, RowSink, int, boolean)})
+	 * 
+	 * @param source
+	 * @param sink
+	 * @param alpha whether alpha channel is also filtered or not
+	 * @return false on error
+	 */
+	public boolean filter(RowSource source, RowSink sink, boolean alpha)
+	{
+		PixelKernel kernel = getKernel();
+		if(kernel == null)
+		{
+			Logger.e("no kernel (only filter(Bitmap) is implemented)");
+			return false;
+		}
+
+		Logger.v(kernel.toString() + " (streaming)");
+
+		try
+		{
+			kernel.apply(source, sink, PixelKernel.DEFAULT_STRIP_ROWS, alpha);
+			return true;
+		}
+		catch(IllegalArgumentException e)
+		{
+			Logger.e(e.getMessage());
+		}
+		catch(IOException e)
+		{
+			Logger.e(e.toString());
+		}
+		return false;
+	}
+
+	/**
+	 * 
+	 * @return true if each pixel is filtered independently, so srcPixels and dstPixels can be the same array
+	 */
+	public boolean canFilterInPlace()
+	{
+		PixelKernel kernel = getKernel();
+		return kernel != null && kernel.canApplyInPlace();
+	}
+
+	/**
+	 * filter with {@link #getKernel()} (subclasses without a kernel override this)
+	 * <br>
+	 * (pixel buffers are drawn from {@link PixelBufferPool#getShared()})
+	 * 
+	 * @param bitmap
+	 * @return filtered bitmap (null on error)
+	 */
+	public Bitmap filter(Bitmap bitmap)
+	{
+		if(!isFilterable(bitmap))
+			return null;
+
+		int width = bitmap.getWidth();
+		int height = bitmap.getHeight();
+
+		PixelBufferPool pool = PixelBufferPool.getShared();
+		int[] srcPixels = pool.acquire(width * height);
+		bitmap.getPixels(srcPixels, 0, width, 0, 0, width, height);
+		int[] dstPixels = canFilterInPlace() ? srcPixels : pool.acquire(width * height);
+
+		try
+		{
+			if(!filter(srcPixels, dstPixels, width, height, isAlphaFiltered(bitmap)))
+				return null;
+
+			return Bitmap.createBitmap(dstPixels, 0, width, width, height, bitmap.getConfig());
+		}
+		finally
+		{
+			pool.release(srcPixels);
+			if(dstPixels != srcPixels)
+				pool.release(dstPixels);
+		}
+	}
+
+	/**
+	 * filter only a region of given bitmap (only the region and its surrounding pixels are read)
+	 * 
+	 * @param bitmap
+	 * @param roi region of interest
+	 * @return filtered region as a new bitmap of roi's size (null on error)
+	 */
+	public Bitmap filter(Bitmap bitmap, Rect roi)
+	{
+		int[] window = new int[4];
+		int[] pixels = filterRegion(bitmap, roi, window);
+		if(pixels == null)
+			return null;
+
+		int windowWidth = window[2] - window[0];
+		try
+		{
+			return Bitmap.createBitmap(pixels, (roi.top - window[1]) * windowWidth + roi.left - window[0], windowWidth, roi.width(), roi.height(), bitmap.getConfig());
+		}
+		finally
+		{
+			PixelBufferPool.getShared().release(pixels);
+		}
+	}
+
+	/**
+	 * filter only a region of given bitmap, and write the result back into it
+	 * 
+	 * @param bitmap mutable bitmap
+	 * @param roi region of interest
+	 * @return false on error
+	 */
+	public boolean filterInPlace(Bitmap bitmap, Rect roi)
+	{
+		if(bitmap != null && !bitmap.isMutable())
+		{
+			Logger.e("parameter error (bitmap not mutable)");
+			return false;
+		}
+
+		int[] window = new int[4];
+		int[] pixels = filterRegion(bitmap, roi, window);
+		if(pixels == null)
+			return false;
+
+		int windowWidth = window[2] - window[0];
+		bitmap.setPixels(pixels, (roi.top - window[1]) * windowWidth + roi.left - window[0], windowWidth, roi.left, roi.top, roi.width(), roi.height());
+		PixelBufferPool.getShared().release(pixels);
+		return true;
+	}
+
+	/**
+	 * read pixels needed for given region (region plus the kernel's border) and filter them
+	 * 
+	 * @param bitmap
+	 * @param roi
+	 * @param window {left, top, right, bottom} of returned pixels is stored here
+	 * @return filtered pixels of window, drawn from {@link PixelBufferPool#getShared()} (null on error)
+	 */
+	private int[] filterRegion(Bitmap bitmap, Rect roi, int[] window)
+	{
+		if(!isFilterable(bitmap))
+			return null;
+		if(roi == null || roi.left < 0 || roi.top < 0 || roi.right > bitmap.getWidth() || roi.bottom > bitmap.getHeight() || roi.isEmpty())
+		{
+			Logger.e("parameter error (roi null, empty, or out of the bitmap)");
+			return null;
+		}
+
+		PixelKernel kernel = getKernel();
+		if(kernel == null)
+		{
+			Logger.e("no kernel (only filter(Bitmap) is implemented)");
+			return null;
+		}
+
+		System.arraycopy(kernel.getRegionWindow(bitmap.getWidth(), bitmap.getHeight(), roi.left, roi.top, roi.right, roi.bottom), 0, window, 0, 4);
+		int width = window[2] - window[0];
+		int height = window[3] - window[1];
+
+		PixelBufferPool pool = PixelBufferPool.getShared();
+		int[] srcPixels = pool.acquire(width * height);
+		bitmap.getPixels(srcPixels, 0, width, window[0], window[1], width, height);
+		int[] dstPixels = canFilterInPlace() ? srcPixels : pool.acquire(width * height);
+
+		boolean filtered = filter(srcPixels, dstPixels, width, height, isAlphaFiltered(bitmap));
+		if(dstPixels != srcPixels)
+			pool.release(srcPixels);
+		if(!filtered)
+		{
+			pool.release(dstPixels);
+			return null;
+		}
+
+		return dstPixels;
+	}
+
+	/**
+	 * 
+	 * @param bitmap
+	 * @return false (with error log) if given bitmap cannot be filtered
+	 */
+	public boolean isFilterable(Bitmap bitmap)
+	{
+		if(bitmap == null)
+		{
+			Logger.e("parameter error (bitmap null)");
+			return false;
+		}
+		return true;
+	}
+
 	/**
 	 * 
 	 * @param a
@@ -71,6 +358,16 @@ public abstract class FilterBase
 		return color & 0xFF;
 	}
 
+	/**
+	 * 
+	 * @param bitmap
+	 * @return whether alpha channel of given bitmap should be filtered or not (false only for 3 bytes-per-pixel bitmaps)
+	 */
+	final public boolean isAlphaFiltered(Bitmap bitmap)
+	{
+		return getBitmapPixelDepth(bitmap) / 8 != 3;
+	}
+
 	/**
 	 * 
 	 * @param bitmap
@@ -0,0 +1,90 @@
+package outsourced.image.filter.base;
+
+import org.andlib.helpers.Logger;
+
+import outsourced.image.filter.kernel.KernelChain;
+import outsourced.image.filter.kernel.PixelKernel;
+import android.graphics.Bitmap;
+
+/**
+ * chain of filters, compiled into as few passes over the pixels as possible (see {@link KernelChain})
+ * <br>
+ * <br>
+ * if any of the filters has no kernel (overrides only {@link FilterBase#filter(Bitmap)}),
+ * the chain has no kernel either, and {@link #filter(Bitmap)} applies the filters one after another.
+ * 
+ * @author meinside@gmail.com
+ * @since 26.10.18.
+ * 
+ * last update 26.10.18.
+ */
+public class FilterChain extends FilterBase
+{
+	private FilterBase[] filters;
+	private KernelChain kernel;
+
+	/**
+	 * 
+	 * @param name
+	 * @param filters applied in given order
+	 */
+	public FilterChain(String name, FilterBase... filters)
+	{
+		this.filters = filters;
+
+		PixelKernel[] kernels = null;
+		if(filters != null)
+		{
+			kernels = new PixelKernel[filters.length];
+			for(int i=0; i<filters.length; i++)
+			{
+				kernels[i] = (filters[i] == null) ? null : filters[i].getKernel();
+				if(filters[i] != null && kernels[i] == null)
+					return;	//not chainable as kernels
+			}
+		}
+		kernel = new KernelChain(name, kernels);
+	}
+
+	/**
+	 * @return the filters
+	 */
+	public FilterBase[] getFilters()
+	{
+		return filters;
+	}
+
+	@Override
+	public PixelKernel getKernel()
+	{
+		return kernel;
+	}
+
+	@Override
+	public Bitmap filter(Bitmap bitmap)
+	{
+		if(kernel != null)
+			return super.filter(bitmap);
+
+		//one after another (intermediate results are recycled)
+		Bitmap filtered = bitmap;
+		for(FilterBase filter: filters)
+		{
+			if(filter == null)
+			{
+				Logger.e("parameter error (filter null)");
+				if(filtered != bitmap)
+					filtered.recycle();
+				return null;
+			}
+
+			Bitmap result = filter.filter(filtered);
+			if(filtered != bitmap)
+				filtered.recycle();
+			if(result == null)
+				return null;
+			filtered = result;
+		}
+		return (filtered != bitmap) ? filtered : bitmap.copy(bitmap.getConfig(), false);
+	}
+}
@@ -0,0 +1,86 @@
+package outsourced.image.filter.base;
+
+import outsourced.image.filter.kernel.ConvolutionKernel.EdgeMode;
+import outsourced.image.filter.kernel.KernelNxN;
+import outsourced.image.filter.kernel.PixelKernel;
+import outsourced.image.filter.kernel.RowBands;
+
+/**
+ * convolution filter of any odd size
+ * <br>
+ * <br>
+ * box kernels (all-equal weights) take O(1) work per pixel regardless of size (see {@link KernelNxN})
+ * 
+ * @author meinside@gmail.com
+ * @since 26.10.18.
+ * 
+ * last update 26.10.18.
+ */
+public class FilterNxN extends FilterBase
+{
+	private KernelNxN kernel;
+	
+	/**
+	 * 
+	 * @param name
+	 * @param multiplier [N][N], N should be odd
+	 * @param divider
+	 * @param bias
+	 */
+	public FilterNxN(String name, int[][] multiplier, int divider, int bias)
+	{
+		this(new KernelNxN(name, multiplier, divider, bias));
+	}
+
+	/**
+	 * 
+	 * @param kernel
+	 */
+	protected FilterNxN(KernelNxN kernel)
+	{
+		this.kernel = kernel;
+	}
+
+	@Override
+	public PixelKernel getKernel()
+	{
+		return kernel;
+	}
+
+	/**
+	 * @return whether rows are filtered in parallel bands or not
+	 */
+	public boolean isParallel()
+	{
+		return kernel.isParallel();
+	}
+
+	/**
+	 * filter rows in parallel bands (see {@link RowBands})
+	 * 
+	 * @param parallel
+	 */
+	public void setParallel(boolean parallel)
+	{
+		kernel.setParallel(parallel);
+	}
+
+	/**
+	 * @return the edge mode
+	 */
+	public EdgeMode getEdgeMode()
+	{
+		return kernel.getEdgeMode();
+	}
+
+	/**
+	 * filter border pixels too, reading pixels outside of the image with given mode
+	 * (EdgeMode.NONE leaves border pixels as they are)
+	 * 
+	 * @param edgeMode
+	 */
+	public void setEdgeMode(EdgeMode edgeMode)
+	{
+		kernel.setEdgeMode(edgeMode);
+	}
+}
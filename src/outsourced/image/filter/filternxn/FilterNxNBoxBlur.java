@@ -0,0 +1,24 @@
+package outsourced.image.filter.filternxn;
+
+import outsourced.image.filter.base.FilterNxN;
+import outsourced.image.filter.kernel.KernelNxN;
+
+/**
+ * box blur of any radius (O(1) work per pixel)
+ * 
+ * @author meinside@gmail.com
+ * @since 26.10.18.
+ * 
+ * last update 26.10.18.
+ */
+public class FilterNxNBoxBlur extends FilterNxN
+{
+	/**
+	 * 
+	 * @param radius
+	 */
+	public FilterNxNBoxBlur(int radius)
+	{
+		super(KernelNxN.createBoxBlur((radius * 2 + 1) + "x" + (radius * 2 + 1) + " Box Blur", radius));
+	}
+}
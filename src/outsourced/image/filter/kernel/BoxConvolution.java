@@ -0,0 +1,211 @@
+package outsourced.image.filter.kernel;
+
+/**
+ * N x N convolution with all-equal weights (box kernel), done with summed-area tables
+ * <br>
+ * <br>
+ * each output pixel takes 4 table lookups per channel, regardless of N.
+ * tables are built for each strip of at most {@link #STRIP_ROWS} rows (plus N/2 padded rows and columns around it,
+ * see {@link ConvolutionKernel.EdgeMode}) and reused for the next strip, so memory is O(width * STRIP_ROWS),
+ * regardless of the image height (N-1 rows are summed again for each strip).
+ * <br>
+ * <br>
+ * tables are accumulated in wrapping int arithmetic: differences of them are still exact as long as
+ * the sum of one window fits in an int (255 * N * N < 2^31), which is checked by {@link #create(int[][], int, int)}.
+ *
+ * @author meinside@gmail.com
+ * @since 26.10.18.
+ *
+ * last update 26.10.18.
+ */
+final public class BoxConvolution
+{
+	public static final int STRIP_ROWS = 64;
+
+	private int size;
+	private int weight;
+	private int divider;
+	private int bias;
+
+	/**
+	 *
+	 * @param size
+	 * @param weight
+	 * @param divider
+	 * @param bias
+	 */
+	private BoxConvolution(int size, int weight, int divider, int bias)
+	{
+		this.size = size;
+		this.weight = weight;
+		this.divider = divider;
+		this.bias = bias;
+	}
+
+	/**
+	 *
+	 * @param multiplier [N][N]
+	 * @param divider
+	 * @param bias
+	 * @return null if given multiplier is not a box kernel, or it is too large
+	 */
+	public static BoxConvolution create(int[][] multiplier, int divider, int bias)
+	{
+		int size = multiplier.length;
+		int weight = multiplier[0][0];
+		if(weight == 0 || divider == 0 || 255L * size * size >= Integer.MAX_VALUE)
+			return null;
+
+		for(int[] row: multiplier)
+		{
+			for(int w: row)
+			{
+				if(w != weight)
+					return null;
+			}
+		}
+		return new BoxConvolution(size, weight, divider, bias);
+	}
+
+	/**
+	 * convolve rows fromY ~ toY-1 of srcPixels into dstPixels
+	 *
+	 * @param srcPixels
+	 * @param dstPixels
+	 * @param width
+	 * @param height
+	 * @param fromY should be >= N/2 for EdgeMode.NONE
+	 * @param toY should be <= height - N/2 for EdgeMode.NONE
+	 * @param alpha whether alpha channel is also filtered or not
+	 * @param edgeMode with EdgeMode.NONE, border columns are not touched
+	 */
+	public void convolve(int[] srcPixels, int[] dstPixels, int width, int height, int fromY, int toY, boolean alpha, ConvolutionKernel.EdgeMode edgeMode)
+	{
+		int half = size / 2;
+		boolean edges = (edgeMode != ConvolutionKernel.EdgeMode.NONE);
+		int from = edges ? 0 : half;
+		int to = edges ? width : width - half;
+		if(fromY >= toY || from >= to)
+			return;
+
+		//tables of padded window: (strip rows + N - 1 + 1) x (width + N - 1 + 1), first row and column are zero
+		int[] columns = ConvolutionKernel.columnMap(edgeMode, width, half);
+		int tableWidth = width + half * 2 + 1;
+		int tableHeight = Math.min(toY - fromY, STRIP_ROWS) + half * 2 + 1;
+		PixelBufferPool pool = PixelBufferPool.getShared();
+		int[] sa = alpha ? pool.acquire(tableWidth * tableHeight) : null;
+		int[] sr = pool.acquire(tableWidth * tableHeight);
+		int[] sg = pool.acquire(tableWidth * tableHeight);
+		int[] sb = pool.acquire(tableWidth * tableHeight);
+
+		//first row and column should be zero (buffers are reused, and strips never write them)
+		for(int t=0; t<tableWidth*tableHeight; t+=(t<tableWidth ? 1 : tableWidth))
+		{
+			sr[t] = sg[t] = sb[t] = 0;
+			if(alpha)
+				sa[t] = 0;
+		}
+
+		try
+		{
+			for(int stripY=fromY; stripY<toY; stripY+=STRIP_ROWS)
+				convolveStrip(srcPixels, dstPixels, width, height, stripY, Math.min(stripY + STRIP_ROWS, toY), from, to, alpha, edgeMode, columns, sa, sr, sg, sb);
+		}
+		finally
+		{
+			pool.release(sa);
+			pool.release(sr);
+			pool.release(sg);
+			pool.release(sb);
+		}
+	}
+
+	/**
+	 * build tables of a strip (rows fromY ~ toY-1 with their padding), and convolve it
+	 *
+	 * @param srcPixels
+	 * @param dstPixels
+	 * @param width
+	 * @param height
+	 * @param fromY
+	 * @param toY
+	 * @param from first column to convolve
+	 * @param to last column to convolve + 1
+	 * @param alpha
+	 * @param edgeMode
+	 * @param columns padded column map
+	 * @param sa table of alpha (null if alpha is false)
+	 * @param sr table of red
+	 * @param sg table of green
+	 * @param sb table of blue
+	 */
+	private void convolveStrip(int[] srcPixels, int[] dstPixels, int width, int height, int fromY, int toY, int from, int to, boolean alpha,
+			ConvolutionKernel.EdgeMode edgeMode, int[] columns, int[] sa, int[] sr, int[] sg, int[] sb)
+	{
+		int half = size / 2;
+		int tableWidth = width + half * 2 + 1;
+		int tableHeight = toY - fromY + half * 2 + 1;
+
+		int x, y, p, t, color, row;
+		int ra, rr, rg, rb;	//running sums of current row
+		for(y=1; y<tableHeight; y++)
+		{
+			row = ConvolutionKernel.edgeIndex(edgeMode, fromY - half + y - 1, height) * width;
+			t = y * tableWidth + 1;
+			ra = rr = rg = rb = 0;
+			for(x=0; x<tableWidth-1; x++, t++)
+			{
+				color = srcPixels[row + columns[x]];
+				rr += (color >> 16) & 0xFF;
+				rg += (color >> 8) & 0xFF;
+				rb += color & 0xFF;
+				sr[t] = sr[t - tableWidth] + rr;
+				sg[t] = sg[t - tableWidth] + rg;
+				sb[t] = sb[t - tableWidth] + rb;
+				if(alpha)
+				{
+					ra += color >>> 24;
+					sa[t] = sa[t - tableWidth] + ra;
+				}
+			}
+		}
+
+		//window of output (x, y) in tables: top-left (x, y - fromY), bottom-right (x + N, y - fromY + N)
+		int weight = this.weight, divider = this.divider, bias = this.bias;
+		int n = size * tableWidth + size;	//offset of bottom-right from top-left
+		int nx = size, ny = size * tableWidth;
+		int a, r, g, b;
+		for(y=fromY; y<toY; y++)
+		{
+			p = y * width + from;
+			t = (y - fromY) * tableWidth + from;
+			if(alpha)
+			{
+				for(x=from; x<to; x++, t++)
+				{
+					a = weight * (sa[t + n] - sa[t + ny] - sa[t + nx] + sa[t]) / divider + bias;
+					r = weight * (sr[t + n] - sr[t + ny] - sr[t + nx] + sr[t]) / divider + bias;
+					g = weight * (sg[t + n] - sg[t + ny] - sg[t + nx] + sg[t]) / divider + bias;
+					b = weight * (sb[t + n] - sb[t + ny] - sb[t + nx] + sb[t]) / divider + bias;
+					dstPixels[p++] = (((a < 0) ? 0 : (a > 255 ? 255 : a)) << 24) |
+							(((r < 0) ? 0 : (r > 255 ? 255 : r)) << 16) |
+							(((g < 0) ? 0 : (g > 255 ? 255 : g)) << 8) |
+							((b < 0) ? 0 : (b > 255 ? 255 : b));
+				}
+			}
+			else
+			{
+				for(x=from; x<to; x++, t++)
+				{
+					r = weight * (sr[t + n] - sr[t + ny] - sr[t + nx] + sr[t]) / divider + bias;
+					g = weight * (sg[t + n] - sg[t + ny] - sg[t + nx] + sg[t]) / divider + bias;
+					b = weight * (sb[t + n] - sb[t + ny] - sb[t + nx] + sb[t]) / divider + bias;
+					dstPixels[p++] = 0xFF000000 |
+							(((r < 0) ? 0 : (r > 255 ? 255 : r)) << 16) |
+							(((g < 0) ? 0 : (g > 255 ? 255 : g)) << 8) |
+							((b < 0) ? 0 : (b > 255 ? 255 : b));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,450 @@
+package outsourced.image.filter.kernel;
+
+import java.util.Arrays;
+
+/**
+ * base of square (N x N, N odd) convolution kernels
+ * <br>
+ * <br>
+ * by default, border pixels (N/2 pixels from each edge) are left as they are.
+ * with other {@link EdgeMode}s, pixels outside of the image are read from padded rows and columns,
+ * so the whole image is filtered in the same single pass.
+ *
+ * @author meinside@gmail.com
+ * @since 26.10.18.
+ *
+ * last update 26.10.18.
+ */
+public abstract class ConvolutionKernel extends PixelKernel
+{
+	/**
+	 * how pixels outside of the image are read
+	 */
+	public enum EdgeMode {
+		NONE,	//border pixels are not filtered, but copied
+		CLAMP,	//nearest edge pixel (aaa|abc)
+		MIRROR,	//mirrored, edge pixel repeated (cba|abc)
+		WRAP,	//from the opposite edge (xyz|abc)
+	};
+
+	protected String name;
+
+	protected int[][] multiplier;	//[N][N]
+	protected int divider;
+	protected int bias;
+
+	private Kernel1x1 pointKernel = null;
+	private PixelKernel speedUp = null;
+	private BoxConvolution box = null;
+	private SeparableKernel separable = null;
+	private PlanarConvolution planar = null;
+	private boolean parallel = false;
+	private EdgeMode edgeMode = EdgeMode.NONE;
+
+	/**
+	 * (speed-up kernels are built here, so multiplier should not be altered afterwards)
+	 *
+	 * @param name
+	 * @param multiplier [N][N]
+	 * @param divider
+	 * @param bias
+	 */
+	protected ConvolutionKernel(String name, int[][] multiplier, int divider, int bias)
+	{
+		this.name = name;
+		this.multiplier = multiplier;
+		this.divider = divider;
+		this.bias = bias;
+
+		int size = multiplier.length;
+		if(size % 2 == 0)
+			throw new IllegalArgumentException("parameter error (size of multiplier should be odd)");
+		for(int[] row: multiplier)
+		{
+			if(row.length != size)
+				throw new IllegalArgumentException("parameter error (multiplier should be square)");
+		}
+
+		//center-only matrix works as a point kernel
+		boolean centerOnly = true;
+		for(int i=0; i<size && centerOnly; i++)
+		{
+			for(int j=0; j<size; j++)
+			{
+				if(multiplier[i][j] != 0 && (i != size / 2 || j != size / 2))
+				{
+					centerOnly = false;
+					break;
+				}
+			}
+		}
+		if(centerOnly)
+		{
+			pointKernel = new Kernel1x1(size + "x" + size + " Speed Up", multiplier[size / 2][size / 2], divider, bias);
+			speedUp = pointKernel;
+		}
+		else
+		{
+			box = BoxConvolution.create(multiplier, divider, bias);
+			separable = SeparableKernel.factor(multiplier);
+			planar = PlanarConvolution.create(multiplier, divider, bias);
+		}
+	}
+
+	/**
+	 * @return N
+	 */
+	public int getSize()
+	{
+		return multiplier.length;
+	}
+
+	@Override
+	public int getBorder()
+	{
+		return (speedUp != null) ? speedUp.getBorder() : getSize() / 2;
+	}
+
+	@Override
+	public boolean isStreamable()
+	{
+		return (speedUp != null) ? speedUp.isStreamable() : edgeMode != EdgeMode.WRAP;
+	}
+
+	/**
+	 * @return the multiplier
+	 */
+	public int[][] getMultiplier()
+	{
+		return multiplier;
+	}
+
+	/**
+	 * @return the divider
+	 */
+	public int getDivider()
+	{
+		return divider;
+	}
+
+	/**
+	 * @return the bias
+	 */
+	public int getBias()
+	{
+		return bias;
+	}
+
+	/**
+	 * @return equivalent point kernel if only the center of multiplier is non-zero, null otherwise
+	 */
+	public Kernel1x1 getPointKernel()
+	{
+		return pointKernel;
+	}
+
+	/**
+	 * @return smaller kernel which produces the same result, or null
+	 */
+	protected PixelKernel getSpeedUpKernel()
+	{
+		return speedUp;
+	}
+
+	/**
+	 * @param speedUp smaller kernel which produces the same result
+	 */
+	protected void setSpeedUpKernel(PixelKernel speedUp)
+	{
+		this.speedUp = speedUp;
+
+		if(speedUp instanceof ConvolutionKernel)
+		{
+			((ConvolutionKernel)speedUp).setParallel(parallel);
+			((ConvolutionKernel)speedUp).setEdgeMode(edgeMode);
+		}
+	}
+
+	/**
+	 * @return whether rows are processed in parallel bands or not
+	 */
+	public boolean isParallel()
+	{
+		return parallel;
+	}
+
+	/**
+	 * process rows in parallel bands (see {@link RowBands})
+	 *
+	 * @param parallel
+	 */
+	public void setParallel(boolean parallel)
+	{
+		this.parallel = parallel;
+
+		if(speedUp instanceof ConvolutionKernel)
+			((ConvolutionKernel)speedUp).setParallel(parallel);
+	}
+
+	/**
+	 * @return the edge mode
+	 */
+	public EdgeMode getEdgeMode()
+	{
+		return edgeMode;
+	}
+
+	/**
+	 * set how pixels outside of the image are read (WRAP cannot be streamed strip by strip)
+	 *
+	 * @param edgeMode
+	 */
+	public void setEdgeMode(EdgeMode edgeMode)
+	{
+		this.edgeMode = (edgeMode == null) ? EdgeMode.NONE : edgeMode;
+
+		if(speedUp instanceof ConvolutionKernel)
+			((ConvolutionKernel)speedUp).setEdgeMode(this.edgeMode);
+	}
+
+	@Override
+	public void apply(final int[] srcPixels, final int[] dstPixels, final int width, final int height, final boolean alpha)
+	{
+		checkPixels(srcPixels, dstPixels, width, height);
+		if(srcPixels == dstPixels)
+			throw new IllegalArgumentException("parameter error (srcPixels and dstPixels should be different arrays)");
+		if(divider == 0)
+			throw new IllegalArgumentException("parameter error (divider is zero)");
+
+		//speed up
+		if(speedUp != null)
+		{
+			speedUp.apply(srcPixels, dstPixels, width, height, alpha);
+			return;
+		}
+
+		final EdgeMode edgeMode = this.edgeMode;
+		int fromY = 0, toY = height;
+		if(edgeMode == EdgeMode.NONE)
+		{
+			int half = getSize() / 2;
+
+			//border pixels are left as they are
+			copyBorder(srcPixels, dstPixels, width, height, half);
+
+			fromY = half;
+			toY = height - half;
+		}
+
+		if(parallel)
+		{
+			RowBands.run(fromY, toY, new RowBands.Band(){
+				public void process(int fromY, int toY)
+				{
+					convolveRows(srcPixels, dstPixels, width, height, fromY, toY, alpha, edgeMode);
+				}
+			});
+		}
+		else
+		{
+			convolveRows(srcPixels, dstPixels, width, height, fromY, toY, alpha, edgeMode);
+		}
+	}
+
+	@Override
+	public String getSignature()
+	{
+		return getClass().getName() + "(" + Arrays.deepToString(multiplier) + ", " + divider + ", " + bias + ", " + edgeMode + ")";
+	}
+
+	@Override
+	public boolean isLumaSupported()
+	{
+		return (speedUp != null) ? speedUp.isLumaSupported() : divider != 0;
+	}
+
+	@Override
+	public void applyLuma(final byte[] srcLuma, final byte[] dstLuma, final int width, final int height)
+	{
+		checkLuma(srcLuma, dstLuma, width, height);
+		if(srcLuma == dstLuma)
+			throw new IllegalArgumentException("parameter error (srcLuma and dstLuma should be different arrays)");
+		if(divider == 0)
+			throw new IllegalArgumentException("parameter error (divider is zero)");
+
+		//speed up
+		if(speedUp != null)
+		{
+			speedUp.applyLuma(srcLuma, dstLuma, width, height);
+			return;
+		}
+
+		final EdgeMode edgeMode = this.edgeMode;
+		int fromY = 0, toY = height;
+		if(edgeMode == EdgeMode.NONE)
+		{
+			int half = getSize() / 2;
+
+			//border pixels are left as they are
+			copyBorder(srcLuma, dstLuma, width, height, half);
+
+			fromY = half;
+			toY = height - half;
+		}
+
+		if(parallel)
+		{
+			RowBands.run(fromY, toY, new RowBands.Band(){
+				public void process(int fromY, int toY)
+				{
+					planar.convolveLuma(srcLuma, dstLuma, width, height, fromY, toY, edgeMode);
+				}
+			});
+		}
+		else
+		{
+			planar.convolveLuma(srcLuma, dstLuma, width, height, fromY, toY, edgeMode);
+		}
+	}
+
+	/**
+	 *
+	 * @param srcPixels
+	 * @param dstPixels
+	 * @param width
+	 * @param height
+	 * @param fromY
+	 * @param toY
+	 * @param alpha
+	 * @param edgeMode
+	 */
+	private void convolveRows(int[] srcPixels, int[] dstPixels, int width, int height, int fromY, int toY, boolean alpha, EdgeMode edgeMode)
+	{
+		//speed up (all-equal weights)
+		if(box != null)
+			box.convolve(srcPixels, dstPixels, width, height, fromY, toY, alpha, edgeMode);
+		//speed up (rank-1 matrix)
+		else if(separable != null)
+			separable.convolve(srcPixels, dstPixels, width, height, fromY, toY, divider, bias, alpha, edgeMode);
+		//speed up (packed or unpacked planes, reciprocal of divider)
+		else if(planar.isPacked() || planar.hasReciprocal() || edgeMode != EdgeMode.NONE)
+			planar.convolve(srcPixels, dstPixels, width, height, fromY, toY, alpha, edgeMode);
+		else
+			convolve(srcPixels, dstPixels, width, fromY, toY, alpha);
+	}
+
+	/**
+	 * convolve rows fromY ~ toY-1 of srcPixels into dstPixels (border columns are not touched)
+	 * <br>
+	 * <br>
+	 * used only when multiplier is too large for the packed lanes and the reciprocal of {@link PlanarConvolution}, with EdgeMode.NONE
+	 *
+	 * @param srcPixels
+	 * @param dstPixels
+	 * @param width
+	 * @param fromY
+	 * @param toY
+	 * @param alpha whether alpha channel is also filtered or not
+	 */
+	abstract protected void convolve(int[] srcPixels, int[] dstPixels, int width, int fromY, int toY, boolean alpha);
+
+	/**
+	 *
+	 * @param edgeMode
+	 * @param i
+	 * @param length
+	 * @return index in 0 ~ length-1 which is read for index i
+	 */
+	static int edgeIndex(EdgeMode edgeMode, int i, int length)
+	{
+		if(i >= 0 && i < length)
+			return i;
+
+		switch(edgeMode)
+		{
+		case MIRROR:
+			i %= length * 2;
+			if(i < 0)
+				i += length * 2;
+			return (i < length) ? i : length * 2 - 1 - i;
+		case WRAP:
+			i %= length;
+			return (i < 0) ? i + length : i;
+		default:
+			return (i < 0) ? 0 : length - 1;
+		}
+	}
+
+	/**
+	 *
+	 * @param edgeMode
+	 * @param width
+	 * @param half
+	 * @return source column of each padded column (-half ~ width+half-1)
+	 */
+	static int[] columnMap(EdgeMode edgeMode, int width, int half)
+	{
+		int[] columns = new int[width + half * 2];
+		for(int i=0; i<columns.length; i++)
+			columns[i] = edgeIndex(edgeMode, i - half, width);
+		return columns;
+	}
+
+	/**
+	 * copy border pixels (which are not filtered by convolution) from srcPixels to dstPixels
+	 *
+	 * @param srcPixels
+	 * @param dstPixels
+	 * @param width
+	 * @param height
+	 * @param border width of border in pixels
+	 */
+	final protected static void copyBorder(int[] srcPixels, int[] dstPixels, int width, int height, int border)
+	{
+		if(width <= border * 2 || height <= border * 2)
+		{
+			System.arraycopy(srcPixels, 0, dstPixels, 0, width * height);
+			return;
+		}
+
+		System.arraycopy(srcPixels, 0, dstPixels, 0, width * border);
+		System.arraycopy(srcPixels, width * (height - border), dstPixels, width * (height - border), width * border);
+		for(int y=border; y<height-border; y++)
+		{
+			System.arraycopy(srcPixels, y * width, dstPixels, y * width, border);
+			System.arraycopy(srcPixels, (y + 1) * width - border, dstPixels, (y + 1) * width - border, border);
+		}
+	}
+
+	/**
+	 * copy border luma values (which are not filtered by convolution) from srcLuma to dstLuma
+	 *
+	 * @param srcLuma
+	 * @param dstLuma
+	 * @param width
+	 * @param height
+	 * @param border width of border in pixels
+	 */
+	final protected static void copyBorder(byte[] srcLuma, byte[] dstLuma, int width, int height, int border)
+	{
+		if(width <= border * 2 || height <= border * 2)
+		{
+			System.arraycopy(srcLuma, 0, dstLuma, 0, width * height);
+			return;
+		}
+
+		System.arraycopy(srcLuma, 0, dstLuma, 0, width * border);
+		System.arraycopy(srcLuma, width * (height - border), dstLuma, width * (height - border), width * border);
+		for(int y=border; y<height-border; y++)
+		{
+			System.arraycopy(srcLuma, y * width, dstLuma, y * width, border);
+			System.arraycopy(srcLuma, (y + 1) * width - border, dstLuma, (y + 1) * width - border, border);
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return name + ", multiplier: " + multiplier + ", divider: " + divider + ", bias: " + bias + ", edge: " + edgeMode;
+	}
+}
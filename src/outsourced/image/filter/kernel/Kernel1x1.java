@@ -0,0 +1,114 @@
+package outsourced.image.filter.kernel;
+
+/**
+ * point kernel: each of r, g, b becomes (value * multiplier / divider + bias), and alpha becomes 255
+ * <br>
+ * <br>
+ * ported from: http://www.gdargaud.net/Hack/SourceCode.html#GraphicFilter
+ *
+ * @author meinside@gmail.com
+ * @since 26.10.18.
+ *
+ * last update 26.10.18.
+ */
+public class Kernel1x1 extends PixelKernel
+{
+	private String name;
+
+	private int multiplier;
+	private int divider;
+	private int bias;
+
+	private int[] lookupTable = null;	//[256], result of each 8-bit channel value
+
+	/**
+	 *
+	 * @param name
+	 * @param multiplier
+	 * @param divider
+	 * @param bias
+	 */
+	public Kernel1x1(String name, int multiplier, int divider, int bias)
+	{
+		this.name = name;
+		this.multiplier = multiplier;
+		this.divider = divider;
+		this.bias = bias;
+
+		if(divider != 0)
+		{
+			lookupTable = new int[256];
+			for(int i=0; i<256; i++)
+				lookupTable[i] = forcepin(0, i * multiplier / divider + bias, 255);
+		}
+	}
+
+	/**
+	 * @return the lookup table (result of each 8-bit channel value)
+	 */
+	public int[] getLookupTable()
+	{
+		return lookupTable;
+	}
+
+	@Override
+	public boolean canApplyInPlace()
+	{
+		return true;
+	}
+
+	@Override
+	public boolean isChannelIndependent(boolean alpha)
+	{
+		return true;
+	}
+
+	@Override
+	public void apply(int[] srcPixels, int[] dstPixels, int width, int height, boolean alpha)
+	{
+		checkPixels(srcPixels, dstPixels, width, height);
+		if(divider == 0 || (multiplier == 1 && divider == 1 && bias == 0))
+			throw new IllegalArgumentException("parameter error (divider is zero, or given filter has no effect)");
+
+		int color;
+		for(int i=0; i<width*height; i++)
+		{
+			color = srcPixels[i];
+
+			dstPixels[i] = rgb(
+					lookupTable[r(color)],
+					lookupTable[g(color)],
+					lookupTable[b(color)]);
+		}
+	}
+
+	@Override
+	public String getSignature()
+	{
+		return getClass().getName() + "(" + multiplier + ", " + divider + ", " + bias + ")";
+	}
+
+	@Override
+	public boolean isLumaSupported()
+	{
+		return true;
+	}
+
+	@Override
+	public void applyLuma(byte[] srcLuma, byte[] dstLuma, int width, int height)
+	{
+		checkLuma(srcLuma, dstLuma, width, height);
+		if(divider == 0 || (multiplier == 1 && divider == 1 && bias == 0))
+			throw new IllegalArgumentException("parameter error (divider is zero, or given filter has no effect)");
+
+		int[] lookupTable = this.lookupTable;
+		for(int i=0; i<width*height; i++)
+			dstLuma[i] = (byte)lookupTable[srcLuma[i] & 0xFF];
+	}
+
+	@Override
+	public String toString()
+	{
+		return name + ", multiplier: " + multiplier + ", divider: " + divider + ", bias: " + bias;
+	}
+}
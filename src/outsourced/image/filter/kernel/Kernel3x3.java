@@ -0,0 +1,143 @@
+package outsourced.image.filter.kernel;
+
+/**
+ * 3x3 convolution kernel
+ * <br>
+ * <br>
+ * ported from: http://www.gdargaud.net/Hack/SourceCode.html#GraphicFilter
+ *
+ * @author meinside@gmail.com
+ * @since 26.10.18.
+ *
+ * last update 26.10.18.
+ */
+public class Kernel3x3 extends ConvolutionKernel
+{
+	/**
+	 *
+	 * @param name
+	 * @param multiplier [3][3]
+	 * @param divider
+	 * @param bias
+	 */
+	public Kernel3x3(String name, int[][] multiplier, int divider, int bias)
+	{
+		super(name, multiplier, divider, bias);
+
+		if(multiplier.length != 3)
+			throw new IllegalArgumentException("parameter error (multiplier should be 3x3)");
+	}
+
+	@Override
+	protected void convolve(int[] srcPixels, int[] dstPixels, int width, int fromY, int toY, boolean alpha)
+	{
+		/*
+		 * NW  N  NE
+		 *  W  C  E
+		 * SW  S  SE
+		 */
+		int pNW, pN, pNE, pW, pC, pE, pSW, pS, pSE;
+		int mNW = multiplier[0][0], 
+			mN = multiplier[0][1], 
+			mNE = multiplier[0][2], 
+			mW = multiplier[1][0], 
+			mC = multiplier[1][1], 
+			mE = multiplier[1][2], 
+			mSW = multiplier[2][0], 
+			mS = multiplier[2][1], 
+			mSE = multiplier[2][2];
+		
+		int destPos = 0;
+		int x, y;
+		int a, r, g, b;
+
+		int currentLinePos;
+		int nextLinePos;
+		int prevLinePos;
+		for(y=fromY; y<toY; y++)
+		{
+			prevLinePos = width * (y - 1);
+			currentLinePos = width * y;
+			nextLinePos = width * (y + 1);
+
+			pNW = prevLinePos;
+			pN = prevLinePos + 1;
+			pNE = prevLinePos + 2;
+			pW = currentLinePos;
+			pC = currentLinePos + 1;
+			pE = currentLinePos + 2;
+			pSW = nextLinePos;
+			pS = nextLinePos + 1;
+			pSE = nextLinePos + 2;   
+
+			destPos = 1 + y * width;
+			for(x=1; x<width-1; x++)
+			{
+				//Red
+				r = forcepin(0,
+						(mNW * r(srcPixels[pNW]) + 
+						 mN * r(srcPixels[pN]) + 
+						 mNE * r(srcPixels[pNE]) + 
+						 mW * r(srcPixels[pW]) + 
+						 mC * r(srcPixels[pC]) + 
+						 mE * r(srcPixels[pE]) + 
+						 mSW * r(srcPixels[pSW]) + 
+						 mS * r(srcPixels[pS]) + 
+						 mSE * r(srcPixels[pSE])) / divider + bias, 
+						 255);
+
+				//Green
+				g = forcepin(0, 
+						(mNW * g(srcPixels[pNW]) + 
+						 mN * g(srcPixels[pN]) + 
+						 mNE * g(srcPixels[pNE]) +
+						 mW * g(srcPixels[pW]) + 
+						 mC * g(srcPixels[pC]) + 
+						 mE * g(srcPixels[pE]) +
+						 mSW * g(srcPixels[pSW]) + 
+						 mS * g(srcPixels[pS]) + 
+						 mSE * g(srcPixels[pSE])) / divider + bias,
+						 255);
+
+				//Blue
+				b = forcepin(0, 
+						(mNW * b(srcPixels[pNW]) + 
+						 mN * b(srcPixels[pN]) + 
+						 mNE * b(srcPixels[pNE]) +
+						 mW * b(srcPixels[pW]) + 
+						 mC * b(srcPixels[pC]) + 
+						 mE * b(srcPixels[pE]) +
+						 mSW * b(srcPixels[pSW]) + 
+						 mS * b(srcPixels[pS]) + 
+						 mSE * b(srcPixels[pSE])) / divider + bias, 
+						 255);
+
+				if(!alpha)
+				{
+					dstPixels[destPos++] = rgb(r, g, b);
+				}
+				else
+				{
+					//Alpha
+					a = forcepin(0,
+							(mNW * a(srcPixels[pNW]) + 
+							 mN * a(srcPixels[pN]) + 
+							 mNE * a(srcPixels[pNE]) +
+							 mW * a(srcPixels[pW]) + 
+							 mC * a(srcPixels[pC]) + 
+							 mE * a(srcPixels[pE]) +
+							 mSW * a(srcPixels[pSW]) + 
+							 mS * a(srcPixels[pS]) + 
+							 mSE * a(srcPixels[pSE])) / divider + bias, 
+							 255);
+					
+					dstPixels[destPos++] = argb(a, r, g, b);
+				}
+
+				pNW ++; pN ++; pNE ++;
+				pW ++; pC ++; pE ++;
+				pSW ++; pS ++; pSE ++;
+			}
+		}
+	}
+}
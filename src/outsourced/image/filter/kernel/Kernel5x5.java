@@ -0,0 +1,247 @@
+package outsourced.image.filter.kernel;
+
+/**
+ * 5x5 convolution kernel
+ * <br>
+ * <br>
+ * ported from: http://www.gdargaud.net/Hack/SourceCode.html#GraphicFilter
+ *
+ * @author meinside@gmail.com
+ * @since 26.10.18.
+ *
+ * last update 26.10.18.
+ */
+public class Kernel5x5 extends ConvolutionKernel
+{
+	/**
+	 *
+	 * @param name
+	 * @param multiplier [5][5]
+	 * @param divider
+	 * @param bias
+	 */
+	public Kernel5x5(String name, int[][] multiplier, int divider, int bias)
+	{
+		super(name, multiplier, divider, bias);
+
+		if(multiplier.length != 5)
+			throw new IllegalArgumentException("parameter error (multiplier should be 5x5)");
+
+		//speed up
+		if(getSpeedUpKernel() == null &&
+			multiplier[0][0] == 0 && multiplier[0][1] == 0 && multiplier[0][2] == 0 && multiplier[0][3] == 0 && multiplier[0][4] == 0 &&
+			multiplier[1][0] == 0 && multiplier[1][4] == 0 &&
+			multiplier[2][0] == 0 && multiplier[2][4] == 0 &&
+			multiplier[3][0] == 0 && multiplier[3][4] == 0 &&
+			multiplier[4][0] == 0 && multiplier[4][1] == 0 && multiplier[4][2] == 0 && multiplier[4][3] == 0 && multiplier[4][4] == 0)
+		{
+			setSpeedUpKernel(new Kernel3x3("3x3 Speed Up", new int[][]{
+					{multiplier[1][1], multiplier[1][2], multiplier[1][3]}, 
+					{multiplier[2][1], multiplier[2][2], multiplier[2][3]}, 
+					{multiplier[3][1], multiplier[3][2], multiplier[3][3]}
+					}, divider, bias));
+		}
+	}
+
+	@Override
+	protected void convolve(int[] srcPixels, int[] dstPixels, int width, int fromY, int toY, boolean alpha)
+	{
+		/*
+		 * 00 10 20 30 40
+		 * 01 11 21 31 41
+		 * 02 12 22 32 42
+		 * 03 13 23 33 43
+		 * 04 14 24 34 44
+		 */
+		int p00, p10, p20, p30, p40,
+			p01, p11, p21, p31, p41,
+			p02, p12, p22, p32, p42,
+			p03, p13, p23, p33, p43,
+			p04, p14, p24, p34, p44;
+		int m00 = multiplier[0][0],m10 = multiplier[0][1],m20 = multiplier[0][2],m30 = multiplier[0][3],m40 = multiplier[0][4],
+			m01 = multiplier[1][0],m11 = multiplier[1][1],m21 = multiplier[1][2],m31 = multiplier[1][3],m41 = multiplier[1][4],
+			m02 = multiplier[2][0],m12 = multiplier[2][1],m22 = multiplier[2][2],m32 = multiplier[2][3],m42 = multiplier[2][4],
+			m03 = multiplier[3][0],m13 = multiplier[3][1],m23 = multiplier[3][2],m33 = multiplier[3][3],m43 = multiplier[3][4],
+			m04 = multiplier[4][0],m14 = multiplier[4][1],m24 = multiplier[4][2],m34 = multiplier[4][3],m44 = multiplier[4][4];
+
+		int destPos = 0;
+		int x, y;
+		int a, r, g, b;
+
+		int prevPrevLinePos;
+		int prevLinePos;
+		int currentLinePos;
+		int nextLinePos;
+		int nextNextLinePos;
+
+		for(y=fromY; y<toY; y++)
+		{
+			prevPrevLinePos = width * (y - 2);
+			prevLinePos = width * (y - 1);
+			currentLinePos = width * y;
+			nextLinePos = width * (y + 1);
+			nextNextLinePos = width * (y + 2);
+			
+			p00 = prevPrevLinePos;
+			p10 = prevPrevLinePos + 1;
+			p20 = prevPrevLinePos + 2;
+			p30 = prevPrevLinePos + 3;
+			p40 = prevPrevLinePos + 4;
+			p01 = prevLinePos;
+			p11 = prevLinePos + 1;
+			p21 = prevLinePos + 2;
+			p31 = prevLinePos + 3;
+			p41 = prevLinePos + 4;
+			p02 = currentLinePos;
+			p12 = currentLinePos + 1;
+			p22 = currentLinePos + 2;
+			p32 = currentLinePos + 3;
+			p42 = currentLinePos + 4;
+			p03 = nextLinePos;
+			p13 = nextLinePos + 1;
+			p23 = nextLinePos + 2;
+			p33 = nextLinePos + 3;
+			p43 = nextLinePos + 4;
+			p04 = nextNextLinePos;
+			p14 = nextNextLinePos + 1;
+			p24 = nextNextLinePos + 2;
+			p34 = nextNextLinePos + 3;
+			p44 = nextNextLinePos + 4;
+
+			destPos = 2 + y * width;
+			for(x=2; x<width-2; x++)
+			{
+				//Red
+				r = forcepin(0,
+						(m00 * r(srcPixels[p00]) + 
+						m10 * r(srcPixels[p10]) + 
+						m20 * r(srcPixels[p20]) + 
+						m30 * r(srcPixels[p30]) + 
+						m40 * r(srcPixels[p40]) +
+						m01 * r(srcPixels[p01]) + 
+						m11 * r(srcPixels[p11]) + 
+						m21 * r(srcPixels[p21]) + 
+						m31 * r(srcPixels[p31]) + 
+						m41 * r(srcPixels[p41]) +
+						m02 * r(srcPixels[p02]) + 
+						m12 * r(srcPixels[p12]) + 
+						m22 * r(srcPixels[p22]) + 
+						m32 * r(srcPixels[p32]) + 
+						m42 * r(srcPixels[p42]) +
+						m03 * r(srcPixels[p03]) + 
+						m13 * r(srcPixels[p13]) + 
+						m23 * r(srcPixels[p23]) + 
+						m33 * r(srcPixels[p33]) + 
+						m43 * r(srcPixels[p43]) +
+						m04 * r(srcPixels[p04]) + 
+						m14 * r(srcPixels[p14]) + 
+						m24 * r(srcPixels[p24]) + 
+						m34 * r(srcPixels[p34]) + 
+						m44 * r(srcPixels[p44])) / divider + bias,
+					 255);
+
+				//Green
+				g = forcepin(0,
+						(m00 * g(srcPixels[p00]) + 
+						m10 * g(srcPixels[p10]) + 
+						m20 * g(srcPixels[p20]) + 
+						m30 * g(srcPixels[p30]) + 
+						m40 * g(srcPixels[p40]) +
+						m01 * g(srcPixels[p01]) + 
+						m11 * g(srcPixels[p11]) + 
+						m21 * g(srcPixels[p21]) + 
+						m31 * g(srcPixels[p31]) + 
+						m41 * g(srcPixels[p41]) +
+						m02 * g(srcPixels[p02]) + 
+						m12 * g(srcPixels[p12]) + 
+						m22 * g(srcPixels[p22]) + 
+						m32 * g(srcPixels[p32]) + 
+						m42 * g(srcPixels[p42]) +
+						m03 * g(srcPixels[p03]) + 
+						m13 * g(srcPixels[p13]) + 
+						m23 * g(srcPixels[p23]) + 
+						m33 * g(srcPixels[p33]) + 
+						m43 * g(srcPixels[p43]) +
+						m04 * g(srcPixels[p04]) + 
+						m14 * g(srcPixels[p14]) + 
+						m24 * g(srcPixels[p24]) + 
+						m34 * g(srcPixels[p34]) + 
+						m44 * g(srcPixels[p44])) / divider + bias,
+					 255);
+
+				//Blue
+				b = forcepin(0,
+						(m00 * b(srcPixels[p00]) + 
+						m10 * b(srcPixels[p10]) + 
+						m20 * b(srcPixels[p20]) + 
+						m30 * b(srcPixels[p30]) + 
+						m40 * b(srcPixels[p40]) +
+						m01 * b(srcPixels[p01]) + 
+						m11 * b(srcPixels[p11]) + 
+						m21 * b(srcPixels[p21]) + 
+						m31 * b(srcPixels[p31]) + 
+						m41 * b(srcPixels[p41]) +
+						m02 * b(srcPixels[p02]) + 
+						m12 * b(srcPixels[p12]) + 
+						m22 * b(srcPixels[p22]) + 
+						m32 * b(srcPixels[p32]) + 
+						m42 * b(srcPixels[p42]) +
+						m03 * b(srcPixels[p03]) + 
+						m13 * b(srcPixels[p13]) + 
+						m23 * b(srcPixels[p23]) + 
+						m33 * b(srcPixels[p33]) + 
+						m43 * b(srcPixels[p43]) +
+						m04 * b(srcPixels[p04]) + 
+						m14 * b(srcPixels[p14]) + 
+						m24 * b(srcPixels[p24]) + 
+						m34 * b(srcPixels[p34]) + 
+						m44 * b(srcPixels[p44])) / divider + bias,
+					 255);
+				
+				if(!alpha)
+				{
+					dstPixels[destPos++] = rgb(r, g, b);
+				}
+				else
+				{
+					//Alpha
+					a = forcepin(0,
+							(m00 * a(srcPixels[p00]) + 
+							m10 * a(srcPixels[p10]) + 
+							m20 * a(srcPixels[p20]) + 
+							m30 * a(srcPixels[p30]) + 
+							m40 * a(srcPixels[p40]) +
+							m01 * a(srcPixels[p01]) + 
+							m11 * a(srcPixels[p11]) + 
+							m21 * a(srcPixels[p21]) + 
+							m31 * a(srcPixels[p31]) + 
+							m41 * a(srcPixels[p41]) +
+							m02 * a(srcPixels[p02]) + 
+							m12 * a(srcPixels[p12]) + 
+							m22 * a(srcPixels[p22]) + 
+							m32 * a(srcPixels[p32]) + 
+							m42 * a(srcPixels[p42]) +
+							m03 * a(srcPixels[p03]) + 
+							m13 * a(srcPixels[p13]) + 
+							m23 * a(srcPixels[p23]) + 
+							m33 * a(srcPixels[p33]) + 
+							m43 * a(srcPixels[p43]) +
+							m04 * a(srcPixels[p04]) + 
+							m14 * a(srcPixels[p14]) + 
+							m24 * a(srcPixels[p24]) + 
+							m34 * a(srcPixels[p34]) + 
+							m44 * a(srcPixels[p44])) / divider + bias,
+						 255);
+
+					dstPixels[destPos++] = argb(a, r, g, b);
+				}
+				
+				p00 ++; p10 ++; p20 ++; p30 ++; p40 ++;
+				p01 ++; p11 ++; p21 ++; p31 ++; p41 ++;
+				p02 ++; p12 ++; p22 ++; p32 ++; p42 ++;
+				p03 ++; p13 ++; p23 ++; p33 ++; p43 ++;
+				p04 ++; p14 ++; p24 ++; p34 ++; p44 ++;
+			}
+		}
+	}
+}
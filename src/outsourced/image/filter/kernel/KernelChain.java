@@ -0,0 +1,374 @@
+package outsourced.image.filter.kernel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * chain of kernels, compiled into as few passes over the pixels as possible
+ * <br>
+ * <br>
+ * - consecutive point kernels (Kernel1x1, KernelIC, and center-only convolution kernels) are fused into one per-pixel pass<br>
+ * - among them, consecutive channel-independent kernels are composed into a single set of lookup tables<br>
+ * - other kernels (convolutions) are run as their own passes<br>
+ * <br>
+ * convolutions are not merged with each other: each of them clamps and divides its result,
+ * so a composed kernel would not produce the same pixels.
+ * <br>
+ * <br>
+ * border of a chain is the sum of its kernels' borders, so it can be streamed strip by strip as well.
+ *
+ * @author meinside@gmail.com
+ * @since 26.10.18.
+ *
+ * last update 26.10.18.
+ */
+public class KernelChain extends PixelKernel
+{
+	private String name;
+	private PixelKernel[] kernels;
+
+	private Object[] passesWithAlpha = null;
+	private Object[] passesWithoutAlpha = null;
+
+	/**
+	 *
+	 * @param name
+	 * @param kernels applied in given order
+	 */
+	public KernelChain(String name, PixelKernel... kernels)
+	{
+		this.name = name;
+		this.kernels = kernels;
+	}
+
+	/**
+	 * @return the kernels
+	 */
+	public PixelKernel[] getKernels()
+	{
+		return kernels;
+	}
+
+	@Override
+	public int getBorder()
+	{
+		int border = 0;
+		if(kernels != null)
+		{
+			for(PixelKernel kernel: kernels)
+			{
+				if(kernel != null)
+					border += kernel.getBorder();
+			}
+		}
+		return border;
+	}
+
+	@Override
+	public boolean isStreamable()
+	{
+		if(kernels == null)
+			return false;
+
+		for(PixelKernel kernel: kernels)
+		{
+			if(kernel == null || !kernel.isStreamable())
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public String getSignature()
+	{
+		if(kernels == null)
+			return null;
+
+		StringBuilder signature = new StringBuilder(getClass().getName()).append("(");
+		String kernelSignature;
+		for(PixelKernel kernel: kernels)
+		{
+			if(kernel == null || (kernelSignature = kernel.getSignature()) == null)
+				return null;
+			signature.append(kernelSignature).append(", ");
+		}
+		return signature.append(")").toString();
+	}
+
+	@Override
+	public boolean isLumaSupported()
+	{
+		if(kernels == null || kernels.length == 0)
+			return false;
+
+		for(PixelKernel kernel: kernels)
+		{
+			if(kernel == null || !kernel.isLumaSupported())
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public void applyLuma(byte[] srcLuma, byte[] dstLuma, int width, int height)
+	{
+		checkLuma(srcLuma, dstLuma, width, height);
+		if(kernels == null || kernels.length == 0)
+			throw new IllegalArgumentException("parameter error (no kernel)");
+
+		byte[] current = srcLuma, output, buffer = null;
+		for(PixelKernel kernel: kernels)
+		{
+			if(current != dstLuma || kernel.canApplyInPlace())
+			{
+				output = dstLuma;
+			}
+			else
+			{
+				if(buffer == null)
+					buffer = new byte[width * height];
+				output = buffer;
+			}
+
+			kernel.applyLuma(current, output, width, height);
+			current = output;
+		}
+
+		if(current != dstLuma)
+			System.arraycopy(current, 0, dstLuma, 0, width * height);
+	}
+
+	@Override
+	public boolean canApplyInPlace()
+	{
+		if(kernels == null)
+			return false;
+
+		for(PixelKernel kernel: kernels)
+		{
+			if(kernel == null || !kernel.canApplyInPlace() && toPointKernel(kernel) == null)
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public void apply(int[] srcPixels, int[] dstPixels, int width, int height, boolean alpha)
+	{
+		checkPixels(srcPixels, dstPixels, width, height);
+		if(kernels == null || kernels.length == 0)
+			throw new IllegalArgumentException("parameter error (no kernel)");
+
+		int[] current = srcPixels, output, buffer = null;
+		try
+		{
+			for(Object pass: getPasses(alpha))
+			{
+				if(pass instanceof PointPass)
+				{
+					((PointPass)pass).apply(current, dstPixels, width * height);
+					current = dstPixels;
+				}
+				else
+				{
+					if(current != dstPixels)
+					{
+						output = dstPixels;
+					}
+					else
+					{
+						if(buffer == null)
+							buffer = PixelBufferPool.getShared().acquire(width * height);
+						output = buffer;
+					}
+
+					((PixelKernel)pass).apply(current, output, width, height, alpha);
+					current = output;
+				}
+			}
+
+			if(current != dstPixels)
+				System.arraycopy(current, 0, dstPixels, 0, width * height);
+		}
+		finally
+		{
+			PixelBufferPool.getShared().release(buffer);
+		}
+	}
+
+	/**
+	 *
+	 * @param alpha
+	 * @return compiled passes
+	 * @throws IllegalArgumentException
+	 */
+	private synchronized Object[] getPasses(boolean alpha)
+	{
+		if(alpha)
+		{
+			if(passesWithAlpha == null)
+				passesWithAlpha = compile(true);
+			return passesWithAlpha;
+		}
+		else
+		{
+			if(passesWithoutAlpha == null)
+				passesWithoutAlpha = compile(false);
+			return passesWithoutAlpha;
+		}
+	}
+
+	/**
+	 *
+	 * @param kernel
+	 * @return given kernel itself or its point kernel equivalent, null if it is not a point kernel
+	 */
+	private PixelKernel toPointKernel(PixelKernel kernel)
+	{
+		if(kernel instanceof Kernel1x1 || kernel instanceof KernelIC)
+			return kernel;
+		else if(kernel instanceof ConvolutionKernel)
+			return ((ConvolutionKernel)kernel).getPointKernel();
+		return null;
+	}
+
+	/**
+	 *
+	 * @param alpha
+	 * @return
+	 * @throws IllegalArgumentException
+	 */
+	private Object[] compile(boolean alpha)
+	{
+		List<Object> passes = new ArrayList<Object>();
+		PointPass pointPass = null;
+		PixelKernel point;
+
+		for(PixelKernel kernel: kernels)
+		{
+			if(kernel == null)
+				throw new IllegalArgumentException("parameter error (kernel null)");
+
+			if((point = toPointKernel(kernel)) != null)
+			{
+				if(pointPass == null)
+				{
+					pointPass = new PointPass(alpha);
+					passes.add(pointPass);
+				}
+				pointPass.add(point);
+			}
+			else
+			{
+				pointPass = null;
+				passes.add(kernel);
+			}
+		}
+
+		return passes.toArray();
+	}
+
+	/**
+	 * consecutive point kernels fused into one per-pixel transform
+	 */
+	private static class PointPass
+	{
+		private boolean alpha;
+
+		//for each step: lookup tables (a, r, g, b; 256 entries each), or a channel-mixing kernel
+		private List<int[]> tables = new ArrayList<int[]>();
+		private List<KernelIC> mixers = new ArrayList<KernelIC>();
+
+		//probe pixels for composing channel-independent kernels: (i, i, i, i) for 0 <= i < 256
+		private int[] probe = null;
+
+		public PointPass(boolean alpha)
+		{
+			this.alpha = alpha;
+		}
+
+		/**
+		 *
+		 * @param kernel
+		 * @throws IllegalArgumentException
+		 */
+		public void add(PixelKernel kernel)
+		{
+			if(kernel.isChannelIndependent(alpha))
+			{
+				if(probe == null)
+				{
+					probe = new int[256];
+					for(int i=0; i<256; i++)
+						probe[i] = (i << 24) | (i << 16) | (i << 8) | i;
+
+					tables.add(new int[256 * 4]);
+					mixers.add(null);
+				}
+
+				//run probe through given kernel, so the composed tables are exactly what the kernels would produce
+				kernel.apply(probe, probe, 256, 1, alpha);
+
+				int[] table = tables.get(tables.size() - 1);
+				for(int i=0; i<256; i++)
+				{
+					table[i] = probe[i] & 0xFF000000;
+					table[256 + i] = probe[i] & 0x00FF0000;
+					table[512 + i] = probe[i] & 0x0000FF00;
+					table[768 + i] = probe[i] & 0x000000FF;
+				}
+			}
+			else
+			{
+				//validates parameters of given kernel
+				kernel.apply(new int[1], new int[1], 1, 1, alpha);
+
+				probe = null;
+
+				tables.add(null);
+				mixers.add((KernelIC)kernel);
+			}
+		}
+
+		/**
+		 *
+		 * @param srcPixels
+		 * @param dstPixels
+		 * @param length
+		 */
+		public void apply(int[] srcPixels, int[] dstPixels, int length)
+		{
+			int steps = tables.size();
+			int[][] tables = this.tables.toArray(new int[steps][]);
+			KernelIC[] mixers = this.mixers.toArray(new KernelIC[steps]);
+
+			int color, step;
+			int[] table;
+			for(int i=0; i<length; i++)
+			{
+				color = srcPixels[i];
+				for(step=0; step<steps; step++)
+				{
+					if((table = tables[step]) != null)
+					{
+						color = table[(color >> 24) & 0xFF] |
+								table[256 + ((color >> 16) & 0xFF)] |
+								table[512 + ((color >> 8) & 0xFF)] |
+								table[768 + (color & 0xFF)];
+					}
+					else
+					{
+						color = mixers[step].filterPixel(color, alpha);
+					}
+				}
+				dstPixels[i] = color;
+			}
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return name + ", " + (kernels == null ? 0 : kernels.length) + " kernels";
+	}
+}
@@ -0,0 +1,485 @@
+package outsourced.image.filter.kernel;
+
+import java.util.Arrays;
+
+/**
+ * color matrix kernel: each output channel is a weighted sum of r, g, b, and a
+ * <br>
+ * <br>
+ * when weighted sums of each output channel fit in 16 bits, two channels are computed with one multiply (SWAR):
+ * input channel c times packed weights (m[r][c] << 16 | m[b][c]) gives its terms of both r and b,
+ * and (m[a][c] << 16 | m[g][c]) of both a and g, so a pixel takes 8 multiplies instead of 16 (6 instead of 9 without alpha).
+ * negative weights are accumulated separately, and other matrices fall back to per-channel arithmetic.
+ * <br>
+ * <br>
+ * ported from: http://www.gdargaud.net/Hack/SourceCode.html#GraphicFilter
+ *
+ * @author meinside@gmail.com
+ * @since 26.10.18.
+ *
+ * last update 26.10.18.
+ */
+public class KernelIC extends PixelKernel
+{
+	private String name;
+
+	private int[][] multiplier;	//[4][4]
+	private int[] divider;	//[4]
+	private int[] bias;	//[4]
+
+	private Kernel1x1 speedUp = null;
+
+	//lookup tables for diagonal matrices: a, r, g, b (256 entries each, already shifted to their positions)
+	private int[] lookupTable = null;
+	private boolean alphaLookup = false;
+
+	//result of gray pixels (null if they do not stay gray)
+	private byte[] lumaTable = null;
+
+	//packed weights of input r, g, b, a: (r << 16 | b) and (a << 16 | g) of output channels, positive and negative parts
+	private int[] rbPositive = null;
+	private int[] agPositive = null;
+	private int[] rbNegative = null;	//null if no weight is negative
+	private int[] agNegative = null;
+
+	/**
+	 * (speed-up kernels are built here, so multiplier, divider and bias should not be altered afterwards)
+	 *
+	 * @param name
+	 * @param multiplier
+	 * @param divider
+	 * @param bias
+	 */
+	public KernelIC(String name, int[][] multiplier, int[] divider, int[] bias)
+	{
+		this.name = name;
+		this.multiplier = multiplier;
+		this.divider = divider;
+		this.bias = bias;
+
+		for(int div: divider)
+		{
+			if(div == 0)
+				return;
+		}
+
+		if(multiplier[1][0] == 0 && multiplier[2][0] == 0 &&  multiplier[3][0] == 0 &&
+			multiplier[0][1] == 0 && multiplier[2][1] == 0 && multiplier[3][1] == 0 &&
+			multiplier[0][2] == 0 && multiplier[1][2] == 0 && multiplier[3][2]==0 &&
+			multiplier[0][3] == 0 && multiplier[1][3] == 0 && multiplier[2][3] == 0 &&
+			multiplier[0][0] * divider[1] == multiplier[1][1] * divider[0] &&
+			multiplier[1][1] * divider[2] == multiplier[2][2] * divider[1] &&
+			multiplier[2][2] * divider[3] == multiplier[3][3] * divider[2] &&
+			multiplier[3][3] * divider[0] == multiplier[0][0] * divider[3] &&
+			multiplier[0][0] == bias[1] &&
+			multiplier[1][0] == bias[2] &&
+			multiplier[2][0] == bias[3] &&
+			multiplier[3][0] == bias[0])
+		{
+			speedUp = new Kernel1x1("IC Speed Up", multiplier[0][0], divider[0], bias[0]);
+		}
+		else
+		{
+			buildLookupTable();
+			buildPackedWeights();
+			buildLumaTable();
+		}
+	}
+
+	/**
+	 * build lookup table of luma values if r, g, b of filtered gray pixels are the same
+	 */
+	private void buildLumaTable()
+	{
+		byte[] table = new byte[256];
+		int p;
+		for(int i=0; i<256; i++)
+		{
+			p = filterPixel(0xFF000000 | (i << 16) | (i << 8) | i, false);
+			if(r(p) != g(p) || g(p) != b(p))
+				return;
+			table[i] = (byte)b(p);
+		}
+		lumaTable = table;
+	}
+
+	/**
+	 * build packed weights if sums of positive (and negative) terms of each output channel fit in 16 bits
+	 */
+	private void buildPackedWeights()
+	{
+		boolean negative = false;
+		int i, j;
+		for(i=0; i<4; i++)
+		{
+			long positiveSum = 0, negativeSum = 0;
+			for(j=0; j<4; j++)
+			{
+				if(multiplier[i][j] > 0)
+					positiveSum += multiplier[i][j];
+				else
+					negativeSum -= multiplier[i][j];
+			}
+			if(positiveSum * 255 > 0xFFFF || negativeSum * 255 > 0xFFFF)
+				return;
+			if(negativeSum > 0)
+				negative = true;
+		}
+
+		rbPositive = new int[4];
+		agPositive = new int[4];
+		if(negative)
+		{
+			rbNegative = new int[4];
+			agNegative = new int[4];
+		}
+		for(j=0; j<4; j++)
+		{
+			rbPositive[j] = (Math.max(multiplier[0][j], 0) << 16) | Math.max(multiplier[2][j], 0);
+			agPositive[j] = (Math.max(multiplier[3][j], 0) << 16) | Math.max(multiplier[1][j], 0);
+			if(negative)
+			{
+				rbNegative[j] = (Math.max(-multiplier[0][j], 0) << 16) | Math.max(-multiplier[2][j], 0);
+				agNegative[j] = (Math.max(-multiplier[3][j], 0) << 16) | Math.max(-multiplier[1][j], 0);
+			}
+		}
+	}
+
+	/**
+	 * build lookup tables if each of r, g, b (and a) depends only on itself
+	 */
+	private void buildLookupTable()
+	{
+		if(!isChannelIndependent(false))
+			return;
+
+		alphaLookup = isChannelIndependent(true);
+
+		lookupTable = new int[256 * 4];
+		for(int i=0; i<256; i++)
+		{
+			if(alphaLookup)
+				lookupTable[i] = forcepin(0, i * multiplier[3][3] / divider[3] + bias[3], 255) << 24;
+			lookupTable[256 + i] = forcepin(0, i * multiplier[0][0] / divider[0] + bias[0], 255) << 16;
+			lookupTable[512 + i] = forcepin(0, i * multiplier[1][1] / divider[1] + bias[1], 255) << 8;
+			lookupTable[768 + i] = forcepin(0, i * multiplier[2][2] / divider[2] + bias[2], 255);
+		}
+	}
+
+	/**
+	 * @return the name
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * @return the multiplier
+	 */
+	public int[][] getMultiplier()
+	{
+		return multiplier;
+	}
+
+	/**
+	 * @return the divider
+	 */
+	public int[] getDivider()
+	{
+		return divider;
+	}
+
+	/**
+	 * @return the bias
+	 */
+	public int[] getBias()
+	{
+		return bias;
+	}
+
+	@Override
+	public boolean canApplyInPlace()
+	{
+		return true;
+	}
+
+	@Override
+	public void apply(int[] srcPixels, int[] dstPixels, int width, int height, boolean alpha)
+	{
+		checkPixels(srcPixels, dstPixels, width, height);
+		for(int div: divider)
+		{
+			if(div == 0)
+				throw new IllegalArgumentException("parameter error (dividers should not be zero)");
+		}
+
+		//speed up
+		if(speedUp != null)
+		{
+			speedUp.apply(srcPixels, dstPixels, width, height, alpha);
+			return;
+		}
+
+		int i, p;
+
+		//speed up (lookup tables)
+		if(lookupTable != null && (alphaLookup || !alpha))
+		{
+			if(alpha)
+			{
+				for(i=0; i<width*height; i++)
+				{
+					p = srcPixels[i];
+					dstPixels[i] = lookupTable[a(p)] | lookupTable[256 + r(p)] | lookupTable[512 + g(p)] | lookupTable[768 + b(p)];
+				}
+			}
+			else
+			{
+				for(i=0; i<width*height; i++)
+				{
+					p = srcPixels[i];
+					dstPixels[i] = 0xFF000000 | lookupTable[256 + r(p)] | lookupTable[512 + g(p)] | lookupTable[768 + b(p)];
+				}
+			}
+			return;
+		}
+
+		//speed up (two channels per multiply)
+		if(rbPositive != null)
+		{
+			if(rbNegative == null)
+				applyPacked(srcPixels, dstPixels, width * height, alpha);
+			else
+			{
+				for(i=0; i<width*height; i++)
+					dstPixels[i] = filterPacked(srcPixels[i], alpha);
+			}
+			return;
+		}
+
+		if(alpha)
+		{
+			for(i=0; i<width*height; i++)
+				dstPixels[i] = filterArgb(srcPixels[i]);
+		}
+		else
+		{
+			for(i=0; i<width*height; i++)
+				dstPixels[i] = filterRgb(srcPixels[i]);
+		}
+	}
+
+	/**
+	 * (dividers should have been checked before)
+	 *
+	 * @param p
+	 * @param alpha whether alpha channel is also filtered or not
+	 * @return filtered color
+	 */
+	public int filterPixel(int p, boolean alpha)
+	{
+		if(rbPositive != null)
+			return filterPacked(p, alpha);
+		return alpha ? filterArgb(p) : filterRgb(p);
+	}
+
+	/**
+	 * {@link #filterPacked(int, boolean)} of pixels, when no weight is negative
+	 *
+	 * @param srcPixels
+	 * @param dstPixels
+	 * @param length
+	 * @param alpha
+	 */
+	private void applyPacked(int[] srcPixels, int[] dstPixels, int length, boolean alpha)
+	{
+		int rbr = rbPositive[0], rbg = rbPositive[1], rbb = rbPositive[2], rba = rbPositive[3];
+		int agr = agPositive[0], agg = agPositive[1], agb = agPositive[2], aga = agPositive[3];
+		int dr = divider[0], dg = divider[1], db = divider[2], da = divider[3];
+		int br = bias[0], bg = bias[1], bb = bias[2], ba = bias[3];
+		int i, p, r, g, b, a, rb, ag;
+
+		if(alpha)
+		{
+			for(i=0; i<length; i++)
+			{
+				p = srcPixels[i];
+				r = (p >> 16) & 0xFF;
+				g = (p >> 8) & 0xFF;
+				b = p & 0xFF;
+				a = p >>> 24;
+				rb = r * rbr + g * rbg + b * rbb + a * rba;
+				ag = r * agr + g * agg + b * agb + a * aga;
+
+				a = (ag >>> 16) / da + ba;
+				r = (rb >>> 16) / dr + br;
+				g = (ag & 0xFFFF) / dg + bg;
+				b = (rb & 0xFFFF) / db + bb;
+				dstPixels[i] = (((a < 0) ? 0 : (a > 255 ? 255 : a)) << 24) |
+						(((r < 0) ? 0 : (r > 255 ? 255 : r)) << 16) |
+						(((g < 0) ? 0 : (g > 255 ? 255 : g)) << 8) |
+						((b < 0) ? 0 : (b > 255 ? 255 : b));
+			}
+		}
+		else
+		{
+			for(i=0; i<length; i++)
+			{
+				p = srcPixels[i];
+				r = (p >> 16) & 0xFF;
+				g = (p >> 8) & 0xFF;
+				b = p & 0xFF;
+				rb = r * rbr + g * rbg + b * rbb;
+				g = (r * agr + g * agg + b * agb) & 0xFFFF;
+
+				r = (rb >>> 16) / dr + br;
+				g = g / dg + bg;
+				b = (rb & 0xFFFF) / db + bb;
+				dstPixels[i] = 0xFF000000 |
+						(((r < 0) ? 0 : (r > 255 ? 255 : r)) << 16) |
+						(((g < 0) ? 0 : (g > 255 ? 255 : g)) << 8) |
+						((b < 0) ? 0 : (b > 255 ? 255 : b));
+			}
+		}
+	}
+
+	/**
+	 * same as {@link #filterArgb(int)} or {@link #filterRgb(int)}, with packed weights
+	 *
+	 * @param p
+	 * @param alpha
+	 * @return
+	 */
+	private int filterPacked(int p, boolean alpha)
+	{
+		int r = (p >> 16) & 0xFF;
+		int g = (p >> 8) & 0xFF;
+		int b = p & 0xFF;
+
+		int rb = r * rbPositive[0] + g * rbPositive[1] + b * rbPositive[2];
+		int ag = r * agPositive[0] + g * agPositive[1] + b * agPositive[2];
+		int rbn = 0, agn = 0;
+		if(rbNegative != null)
+		{
+			rbn = r * rbNegative[0] + g * rbNegative[1] + b * rbNegative[2];
+			agn = r * agNegative[0] + g * agNegative[1] + b * agNegative[2];
+		}
+
+		if(alpha)
+		{
+			int a = p >>> 24;
+			rb += a * rbPositive[3];
+			ag += a * agPositive[3];
+			if(rbNegative != null)
+			{
+				rbn += a * rbNegative[3];
+				agn += a * agNegative[3];
+			}
+		}
+
+		r = ((rb >>> 16) - (rbn >>> 16)) / divider[0] + bias[0];
+		g = ((ag & 0xFFFF) - (agn & 0xFFFF)) / divider[1] + bias[1];
+		b = ((rb & 0xFFFF) - (rbn & 0xFFFF)) / divider[2] + bias[2];
+		p = (((r < 0) ? 0 : (r > 255 ? 255 : r)) << 16) |
+			(((g < 0) ? 0 : (g > 255 ? 255 : g)) << 8) |
+			((b < 0) ? 0 : (b > 255 ? 255 : b));
+
+		if(!alpha)
+			return 0xFF000000 | p;
+
+		int a = ((ag >>> 16) - (agn >>> 16)) / divider[3] + bias[3];
+		return (((a < 0) ? 0 : (a > 255 ? 255 : a)) << 24) | p;
+	}
+
+	/**
+	 *
+	 * @param p
+	 * @return
+	 */
+	private int filterArgb(int p)
+	{
+		int r = r(p);
+		int g = g(p);
+		int b = b(p);
+		int a = a(p);
+
+		return argb(
+				forcepin(0, (r * multiplier[3][0] + g * multiplier[3][1] + b * multiplier[3][2] + a * multiplier[3][3]) / divider[3] + bias[3], 255),
+				forcepin(0, (r * multiplier[0][0] + g * multiplier[0][1] + b * multiplier[0][2] + a * multiplier[0][3]) / divider[0] + bias[0], 255),
+				forcepin(0, (r * multiplier[1][0] + g * multiplier[1][1] + b * multiplier[1][2] + a * multiplier[1][3]) / divider[1] + bias[1], 255),
+				forcepin(0, (r * multiplier[2][0] + g * multiplier[2][1] + b * multiplier[2][2] + a * multiplier[2][3]) / divider[2] + bias[2], 255));
+	}
+
+	/**
+	 *
+	 * @param p
+	 * @return
+	 */
+	private int filterRgb(int p)
+	{
+		int r = r(p);
+		int g = g(p);
+		int b = b(p);
+
+		return rgb(
+				forcepin(0, (r * multiplier[0][0] + g * multiplier[0][1] + b * multiplier[0][2]) / divider[0] + bias[0], 255),
+				forcepin(0, (r * multiplier[1][0] + g * multiplier[1][1] + b * multiplier[1][2]) / divider[1] + bias[1], 255),
+				forcepin(0, (r * multiplier[2][0] + g * multiplier[2][1] + b * multiplier[2][2]) / divider[2] + bias[2], 255));
+	}
+
+	@Override
+	public String getSignature()
+	{
+		return getClass().getName() + "(" + Arrays.deepToString(multiplier) + ", " + Arrays.toString(divider) + ", " + Arrays.toString(bias) + ")";
+	}
+
+	@Override
+	public boolean isLumaSupported()
+	{
+		return (speedUp != null) ? speedUp.isLumaSupported() : lumaTable != null;
+	}
+
+	@Override
+	public void applyLuma(byte[] srcLuma, byte[] dstLuma, int width, int height)
+	{
+		checkLuma(srcLuma, dstLuma, width, height);
+
+		//speed up
+		if(speedUp != null)
+		{
+			speedUp.applyLuma(srcLuma, dstLuma, width, height);
+			return;
+		}
+
+		if(lumaTable == null)
+			throw new IllegalArgumentException("parameter error (gray pixels do not stay gray, or dividers are zero)");
+
+		byte[] lumaTable = this.lumaTable;
+		for(int i=0; i<width*height; i++)
+			dstLuma[i] = lumaTable[srcLuma[i] & 0xFF];
+	}
+
+	@Override
+	public boolean isChannelIndependent(boolean alpha)
+	{
+		for(int i=0; i<4; i++)
+		{
+			for(int j=0; j<4; j++)
+			{
+				if(i == j || (!alpha && (i == 3 || j == 3)))
+					continue;
+
+				if(multiplier[i][j] != 0)
+					return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String toString()
+	{
+		return name + ", multiplier: " + multiplier + ", divider: " + divider + ", bias: " + bias;
+	}
+}
@@ -0,0 +1,89 @@
+package outsourced.image.filter.kernel;
+
+import java.util.Arrays;
+
+/**
+ * N x N convolution kernel (N odd)
+ * <br>
+ * <br>
+ * box kernels (all-equal weights) are done with summed-area tables, so large radii cost the same as small ones.
+ *
+ * @author meinside@gmail.com
+ * @since 26.10.18.
+ *
+ * last update 26.10.18.
+ */
+public class KernelNxN extends ConvolutionKernel
+{
+	/**
+	 *
+	 * @param name
+	 * @param multiplier [N][N]
+	 * @param divider
+	 * @param bias
+	 */
+	public KernelNxN(String name, int[][] multiplier, int divider, int bias)
+	{
+		super(name, multiplier, divider, bias);
+	}
+
+	/**
+	 *
+	 * @param name
+	 * @param radius
+	 * @return box blur kernel of size (radius * 2 + 1)
+	 */
+	public static KernelNxN createBoxBlur(String name, int radius)
+	{
+		int size = radius * 2 + 1;
+		int[][] multiplier = new int[size][size];
+		for(int[] row: multiplier)
+			Arrays.fill(row, 1);
+		return new KernelNxN(name, multiplier, size * size, 0);
+	}
+
+	@Override
+	protected void convolve(int[] srcPixels, int[] dstPixels, int width, int fromY, int toY, boolean alpha)
+	{
+		int size = multiplier.length;
+		int half = size / 2;
+		int x, y, i, j, m, p, color;
+		int sa, sr, sg, sb;
+		int a, r, g, b;
+
+		for(y=fromY; y<toY; y++)
+		{
+			p = y * width + half;
+			for(x=half; x<width-half; x++)
+			{
+				sa = sr = sg = sb = 0;
+				for(i=0; i<size; i++)
+				{
+					for(j=0; j<size; j++)
+					{
+						m = multiplier[i][j];
+						color = srcPixels[(y - half + i) * width + x - half + j];
+						sa += m * a(color);
+						sr += m * r(color);
+						sg += m * g(color);
+						sb += m * b(color);
+					}
+				}
+
+				r = forcepin(0, sr / divider + bias, 255);
+				g = forcepin(0, sg / divider + bias, 255);
+				b = forcepin(0, sb / divider + bias, 255);
+
+				if(!alpha)
+				{
+					dstPixels[p++] = rgb(r, g, b);
+				}
+				else
+				{
+					a = forcepin(0, sa / divider + bias, 255);
+					dstPixels[p++] = argb(a, r, g, b);
+				}
+			}
+		}
+	}
+}
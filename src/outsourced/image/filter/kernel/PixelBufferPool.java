@@ -0,0 +1,232 @@
+package outsourced.image.filter.kernel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+/**
+ * thread-safe pool of int[] pixel buffers, bucketed by size
+ * <br>
+ * <br>
+ * lengths are rounded up to size classes (4 classes per power of two, so at most 25% is wasted),
+ * and a released buffer is handed out again for any request of its class.
+ * <br>
+ * only released (idle) buffers count toward the limit: when they exceed it, least recently released ones are dropped.
+ * <br>
+ * <br>
+ * contents of acquired buffers are undefined, and a buffer should not be used after it is released.
+ *
+ * @author meinside@gmail.com
+ * @since 26.10.18.
+ *
+ * last update 26.10.18.
+ */
+final public class PixelBufferPool
+{
+	public static final int MIN_LENGTH = 64;
+
+	private static PixelBufferPool shared = null;
+
+	private long maxBytes;
+	private long retainedBytes = 0;
+
+	private HashMap<Integer, ArrayList<int[]>> buckets = new HashMap<Integer, ArrayList<int[]>>();
+	private LinkedList<int[]> lru = new LinkedList<int[]>();	//idle buffers, least recently released first
+
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	/**
+	 *
+	 * @param maxBytes limit of idle buffers in bytes
+	 */
+	public PixelBufferPool(long maxBytes)
+	{
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @return pool shared by filters (limited to 1/8 of max heap size)
+	 */
+	public static synchronized PixelBufferPool getShared()
+	{
+		if(shared == null)
+			shared = new PixelBufferPool(Runtime.getRuntime().maxMemory() / 8);
+		return shared;
+	}
+
+	/**
+	 *
+	 * @param length
+	 * @return pooled or new buffer whose length is >= given length
+	 */
+	public int[] acquire(int length)
+	{
+		if(length < 0)
+			throw new IllegalArgumentException("parameter error (negative length)");
+
+		int size = ceilSize(length);
+		synchronized(this)
+		{
+			ArrayList<int[]> bucket = buckets.get(size);
+			if(bucket != null && !bucket.isEmpty())
+			{
+				int[] buffer = bucket.remove(bucket.size() - 1);	//most recently released one
+				lru.remove(buffer);	//(arrays are compared by identity)
+				retainedBytes -= buffer.length * 4L;
+				hits ++;
+				return buffer;
+			}
+			misses ++;
+		}
+		return new int[size];
+	}
+
+	/**
+	 * give a buffer back to the pool
+	 *
+	 * @param buffer can be null, or a buffer not acquired from this pool
+	 */
+	public synchronized void release(int[] buffer)
+	{
+		if(buffer == null || buffer.length < MIN_LENGTH)
+			return;
+
+		long bytes = buffer.length * 4L;
+		if(bytes > maxBytes)
+		{
+			evictions ++;
+			return;
+		}
+
+		Integer size = floorSize(buffer.length);
+		ArrayList<int[]> bucket = buckets.get(size);
+		if(bucket == null)
+		{
+			bucket = new ArrayList<int[]>();
+			buckets.put(size, bucket);
+		}
+		if(bucket.contains(buffer))
+			return;	//released twice
+		bucket.add(buffer);
+		lru.addLast(buffer);
+		retainedBytes += bytes;
+
+		trim(maxBytes);
+	}
+
+	/**
+	 * drop least recently released buffers until idle buffers fit in given bytes
+	 *
+	 * @param bytes
+	 */
+	public synchronized void trim(long bytes)
+	{
+		while(retainedBytes > bytes && !lru.isEmpty())
+		{
+			int[] buffer = lru.removeFirst();
+			ArrayList<int[]> bucket = buckets.get(floorSize(buffer.length));
+			bucket.remove(buffer);
+			retainedBytes -= buffer.length * 4L;
+			evictions ++;
+		}
+	}
+
+	/**
+	 * drop all idle buffers
+	 */
+	public void clear()
+	{
+		trim(0);
+	}
+
+	/**
+	 * @return limit of idle buffers in bytes
+	 */
+	public synchronized long getMaxBytes()
+	{
+		return maxBytes;
+	}
+
+	/**
+	 *
+	 * @param maxBytes limit of idle buffers in bytes
+	 */
+	public synchronized void setMaxBytes(long maxBytes)
+	{
+		this.maxBytes = maxBytes;
+		trim(maxBytes);
+	}
+
+	/**
+	 * @return bytes of idle buffers
+	 */
+	public synchronized long getRetainedBytes()
+	{
+		return retainedBytes;
+	}
+
+	/**
+	 * @return number of acquisitions served from the pool
+	 */
+	public synchronized long getHitCount()
+	{
+		return hits;
+	}
+
+	/**
+	 * @return number of acquisitions which allocated a new buffer
+	 */
+	public synchronized long getMissCount()
+	{
+		return misses;
+	}
+
+	/**
+	 * @return number of buffers dropped for the limit
+	 */
+	public synchronized long getEvictionCount()
+	{
+		return evictions;
+	}
+
+	/**
+	 * reset hit/miss/eviction counters
+	 */
+	public synchronized void resetCounters()
+	{
+		hits = misses = evictions = 0;
+	}
+
+	/**
+	 *
+	 * @param length
+	 * @return smallest size class >= length
+	 */
+	static int ceilSize(int length)
+	{
+		if(length <= MIN_LENGTH)
+			return MIN_LENGTH;
+
+		int step = Integer.highestOneBit(length - 1) >> 2;
+		return ((length - 1) / step + 1) * step;
+	}
+
+	/**
+	 *
+	 * @param length
+	 * @return largest size class <= length
+	 */
+	static int floorSize(int length)
+	{
+		int step = Integer.highestOneBit(length) >> 2;
+		return length / step * step;
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return "hits: " + hits + ", misses: " + misses + ", evictions: " + evictions + ", retained: " + retainedBytes + "/" + maxBytes + " bytes";
+	}
+}
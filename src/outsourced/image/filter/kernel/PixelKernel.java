@@ -0,0 +1,421 @@
+package outsourced.image.filter.kernel;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+
+/**
+ * pixel kernel working on packed ARGB ints, without any dependency on android
+ * <br>
+ * <br>
+ * can be used as it is on plain JVMs (eg. server-side batch jobs, unit tests),
+ * and {@link outsourced.image.filter.base.FilterBase} is a thin android.graphics.Bitmap adapter on top of it.
+ * <br>
+ * <br>
+ * parameter errors are thrown as IllegalArgumentException.
+ *
+ * @author meinside@gmail.com
+ * @since 26.10.18.
+ *
+ * last update 26.10.18.
+ */
+public abstract class PixelKernel
+{
+	public static final int DEFAULT_STRIP_ROWS = 32;
+
+	/**
+	 * apply this kernel to given pixels, without allocating any pixel buffer
+	 *
+	 * @param srcPixels ARGB pixels (width * height)
+	 * @param dstPixels processed ARGB pixels (width * height), can be the same array as srcPixels only when {@link #canApplyInPlace()} is true
+	 * @param width
+	 * @param height
+	 * @param alpha whether alpha channel is also processed or not
+	 * @throws IllegalArgumentException on parameter error
+	 */
+	abstract public void apply(int[] srcPixels, int[] dstPixels, int width, int height, boolean alpha);
+
+	/**
+	 * apply this kernel to a luma (Y) plane, eg. the first width * height bytes of a NV21 camera frame
+	 * <br>
+	 * <br>
+	 * each luma value is processed as a gray pixel (r = g = b = Y), so no color conversion is needed.
+	 * result is the same as {@link #apply(int[], int[], int, int, boolean)} on gray pixels without alpha,
+	 * and is supported only by kernels which keep gray pixels gray (see {@link #isLumaSupported()}).
+	 *
+	 * @param srcLuma luma values (width * height)
+	 * @param dstLuma processed luma values (width * height), can be the same array as srcLuma only when {@link #canApplyInPlace()} is true
+	 * @param width
+	 * @param height
+	 * @throws IllegalArgumentException on parameter error, or if not supported
+	 */
+	public void applyLuma(byte[] srcLuma, byte[] dstLuma, int width, int height)
+	{
+		throw new IllegalArgumentException("parameter error (luma plane is not supported by " + getClass().getSimpleName() + ")");
+	}
+
+	/**
+	 * apply this kernel to given buffers
+	 * <br>
+	 * <br>
+	 * array-backed buffers are processed directly, others are copied in and out
+	 *
+	 * @param srcBuffer ARGB pixels (width * height, from its current position)
+	 * @param dstBuffer processed ARGB pixels (width * height, from its current position)
+	 * @param width
+	 * @param height
+	 * @param alpha whether alpha channel is also processed or not
+	 * @throws IllegalArgumentException on parameter error
+	 */
+	public void apply(IntBuffer srcBuffer, IntBuffer dstBuffer, int width, int height, boolean alpha)
+	{
+		if(srcBuffer == null || dstBuffer == null)
+			throw new IllegalArgumentException("parameter error (buffer null)");
+
+		int length = width * height;
+		if(srcBuffer.remaining() < length || dstBuffer.remaining() < length)
+			throw new IllegalArgumentException("parameter error (buffer smaller than given size)");
+
+		PixelBufferPool pool = PixelBufferPool.getShared();
+		int[] srcPixels, dstPixels;
+		boolean srcBacked = isBackedAtStart(srcBuffer);
+		boolean dstBacked = isBackedAtStart(dstBuffer);
+
+		if(srcBacked)
+		{
+			srcPixels = srcBuffer.array();
+		}
+		else
+		{
+			srcPixels = pool.acquire(length);
+			srcBuffer.duplicate().get(srcPixels, 0, length);
+		}
+
+		if(dstBacked)
+			dstPixels = dstBuffer.array();
+		else
+			dstPixels = (!srcBacked && canApplyInPlace()) ? srcPixels : pool.acquire(length);	//do not overwrite srcBuffer
+
+		try
+		{
+			apply(srcPixels, dstPixels, width, height, alpha);
+
+			if(!dstBacked)
+				dstBuffer.duplicate().put(dstPixels, 0, length);
+		}
+		finally
+		{
+			if(!srcBacked)
+				pool.release(srcPixels);
+			if(!dstBacked && dstPixels != srcPixels)
+				pool.release(dstPixels);
+		}
+	}
+
+	/**
+	 * apply this kernel only to a region of given pixels
+	 * <br>
+	 * <br>
+	 * only the region plus {@link #getBorder()} pixels around it are read and processed,
+	 * so the cost scales with the area of the region, not of the whole image.
+	 * <br>
+	 * output in the region is the same as {@link #apply(int[], int[], int, int, boolean)} on the whole image.
+	 *
+	 * @param srcPixels ARGB pixels (width * height)
+	 * @param dstPixels only pixels in the region are written, can be the same array as srcPixels
+	 * @param width
+	 * @param height
+	 * @param left
+	 * @param top
+	 * @param right exclusive
+	 * @param bottom exclusive
+	 * @param alpha whether alpha channel is also processed or not
+	 * @throws IllegalArgumentException on parameter error
+	 */
+	public void apply(int[] srcPixels, int[] dstPixels, int width, int height, int left, int top, int right, int bottom, boolean alpha)
+	{
+		checkPixels(srcPixels, dstPixels, width, height);
+		if(left < 0 || top < 0 || right > width || bottom > height || left >= right || top >= bottom)
+			throw new IllegalArgumentException("parameter error (region empty or out of the image)");
+
+		int[] window = getRegionWindow(width, height, left, top, right, bottom);
+		int windowWidth = window[2] - window[0];
+		int windowHeight = window[3] - window[1];
+		int y;
+
+		PixelBufferPool pool = PixelBufferPool.getShared();
+		int[] pixels = pool.acquire(windowWidth * windowHeight);
+		for(y=0; y<windowHeight; y++)
+			System.arraycopy(srcPixels, (window[1] + y) * width + window[0], pixels, y * windowWidth, windowWidth);
+		int[] output = canApplyInPlace() ? pixels : pool.acquire(windowWidth * windowHeight);
+
+		try
+		{
+			apply(pixels, output, windowWidth, windowHeight, alpha);
+
+			for(y=top; y<bottom; y++)
+				System.arraycopy(output, (y - window[1]) * windowWidth + left - window[0], dstPixels, y * width + left, right - left);
+		}
+		finally
+		{
+			pool.release(pixels);
+			if(output != pixels)
+				pool.release(output);
+		}
+	}
+
+	/**
+	 * 
+	 * @param width
+	 * @param height
+	 * @param left
+	 * @param top
+	 * @param right
+	 * @param bottom
+	 * @return pixels to be read for processing given region: {left, top, right, bottom} (whole image if this kernel is not streamable)
+	 */
+	public int[] getRegionWindow(int width, int height, int left, int top, int right, int bottom)
+	{
+		if(!isStreamable())
+			return new int[]{0, 0, width, height};
+
+		int border = getBorder();
+		return new int[]{
+				Math.max(0, left - border),
+				Math.max(0, top - border),
+				Math.min(width, right + border),
+				Math.min(height, bottom + border),
+		};
+	}
+
+	/**
+	 * apply this kernel strip by strip, reading rows from source and writing them to sink as soon as they are done
+	 * <br>
+	 * <br>
+	 * only a rolling window of (stripRows + 2 * {@link #getBorder()}) rows is kept in memory,
+	 * so images larger than the available heap can be processed.
+	 * <br>
+	 * output is the same as {@link #apply(int[], int[], int, int, boolean)} on the whole image.
+	 *
+	 * @param source
+	 * @param sink
+	 * @param stripRows number of rows written at once (eg. {@link #DEFAULT_STRIP_ROWS})
+	 * @param alpha whether alpha channel is also processed or not
+	 * @throws IOException from source or sink
+	 * @throws IllegalArgumentException on parameter error
+	 */
+	public void apply(RowSource source, RowSink sink, int stripRows, boolean alpha) throws IOException
+	{
+		if(source == null || sink == null || stripRows <= 0)
+			throw new IllegalArgumentException("parameter error (source or sink null, or stripRows not positive)");
+		if(!isStreamable())
+			throw new IllegalArgumentException("parameter error (this kernel cannot be streamed)");
+
+		int width = source.getWidth();
+		int height = source.getHeight();
+		int border = getBorder();
+
+		int capacity = Math.min(height, stripRows + border * 2);
+		int[] window = new int[width * capacity];
+		int[] output = (border == 0 && canApplyInPlace()) ? window : new int[width * capacity];
+
+		int windowFrom = 0, windowTo = 0;	//rows windowFrom ~ windowTo-1 are in window
+		int fromY, toY, readFrom, readTo, kept;
+		for(fromY=0; fromY<height; fromY=toY)
+		{
+			toY = Math.min(height, fromY + stripRows);
+			readFrom = Math.max(0, fromY - border);
+			readTo = Math.min(height, toY + border);
+
+			//rows overlapping with the previous window are not read again
+			kept = Math.max(0, windowTo - readFrom);
+			if(kept > 0 && readFrom != windowFrom)
+				System.arraycopy(window, (readFrom - windowFrom) * width, window, 0, kept * width);
+			if(readTo > readFrom + kept)
+				source.readRows(readFrom + kept, readTo - readFrom - kept, window, kept * width);
+			windowFrom = readFrom;
+			windowTo = readTo;
+
+			//rows near the edges of window are wrong only when they are not the edges of the image, and they are not written
+			apply(window, output, width, windowTo - windowFrom, alpha);
+
+			sink.writeRows(fromY, toY - fromY, output, (fromY - windowFrom) * width);
+		}
+	}
+
+	/**
+	 *
+	 * @param buffer
+	 * @return whether given buffer's backing array can be used directly or not
+	 */
+	private static boolean isBackedAtStart(IntBuffer buffer)
+	{
+		return buffer.hasArray() && buffer.arrayOffset() + buffer.position() == 0 && !buffer.isReadOnly();
+	}
+
+	/**
+	 *
+	 * @return number of neighbouring rows (and columns) on each side which are read for processing a pixel
+	 */
+	public int getBorder()
+	{
+		return 0;
+	}
+
+	/**
+	 *
+	 * @return true if each output pixel depends only on the pixels within {@link #getBorder()} from it (so that it can be streamed strip by strip, or applied to a region)
+	 */
+	public boolean isStreamable()
+	{
+		return true;
+	}
+
+	/**
+	 *
+	 * @return class and parameters of this kernel (kernels with the same signature produce the same result), or null if unknown
+	 */
+	public String getSignature()
+	{
+		return null;
+	}
+
+	/**
+	 *
+	 * @return true if gray pixels stay gray, so that {@link #applyLuma(byte[], byte[], int, int)} can be used
+	 */
+	public boolean isLumaSupported()
+	{
+		return false;
+	}
+
+	/**
+	 *
+	 * @return true if each pixel is processed independently, so srcPixels and dstPixels can be the same array
+	 */
+	public boolean canApplyInPlace()
+	{
+		return false;
+	}
+
+	/**
+	 *
+	 * @param alpha
+	 * @return true if each output channel depends only on the same input channel (so that it can be done with lookup tables)
+	 */
+	public boolean isChannelIndependent(boolean alpha)
+	{
+		return false;
+	}
+
+	/**
+	 * check the size of given pixels
+	 *
+	 * @param srcPixels
+	 * @param dstPixels
+	 * @param width
+	 * @param height
+	 * @throws IllegalArgumentException
+	 */
+	final protected static void checkPixels(int[] srcPixels, int[] dstPixels, int width, int height)
+	{
+		if(srcPixels == null || dstPixels == null)
+			throw new IllegalArgumentException("parameter error (pixels null)");
+		if(width < 0 || height < 0 || srcPixels.length < width * height || dstPixels.length < width * height)
+			throw new IllegalArgumentException("parameter error (pixels smaller than given size)");
+	}
+
+	/**
+	 *
+	 * @param srcLuma
+	 * @param dstLuma
+	 * @param width
+	 * @param height
+	 * @throws IllegalArgumentException
+	 */
+	final protected static void checkLuma(byte[] srcLuma, byte[] dstLuma, int width, int height)
+	{
+		if(srcLuma == null || dstLuma == null)
+			throw new IllegalArgumentException("parameter error (luma null)");
+		if(width < 0 || height < 0 || srcLuma.length < width * height || dstLuma.length < width * height)
+			throw new IllegalArgumentException("parameter error (luma smaller than given size)");
+	}
+
+	/**
+	 *
+	 * @param a
+	 * @param b
+	 * @param c
+	 * @return
+	 */
+	final public static int forcepin(int a, int b, int c)
+	{
+		return (a > b) ? a : (b > c ? c : b);
+	}
+
+	/**
+	 *
+	 * @param color
+	 * @return
+	 */
+	final public static int a(int color)
+	{
+		return (color >> 24) & 0xFF;
+	}
+
+	/**
+	 *
+	 * @param color
+	 * @return
+	 */
+	final public static int r(int color)
+	{
+		return (color >> 16) & 0xFF;
+	}
+
+	/**
+	 *
+	 * @param color
+	 * @return
+	 */
+	final public static int g(int color)
+	{
+		return (color >> 8) & 0xFF;
+	}
+
+	/**
+	 *
+	 * @param color
+	 * @return
+	 */
+	final public static int b(int color)
+	{
+		return color & 0xFF;
+	}
+
+	/**
+	 * (same as android.graphics.Color.argb())
+	 *
+	 * @param a
+	 * @param r
+	 * @param g
+	 * @param b
+	 * @return
+	 */
+	final public static int argb(int a, int r, int g, int b)
+	{
+		return (a << 24) | (r << 16) | (g << 8) | b;
+	}
+
+	/**
+	 * (same as android.graphics.Color.rgb())
+	 *
+	 * @param r
+	 * @param g
+	 * @param b
+	 * @return
+	 */
+	final public static int rgb(int r, int g, int b)
+	{
+		return 0xFF000000 | (r << 16) | (g << 8) | b;
+	}
+}
@@ -0,0 +1,520 @@
+package outsourced.image.filter.kernel;
+
+/**
+ * branch-free variant of N x N convolution, producing exactly the same pixels as the unrolled loops
+ * <br>
+ * <br>
+ * - each source row is unpacked into channel planes only once (not N*N times per channel)<br>
+ * - each non-zero tap is a plain multiply-add over a whole row (zero taps are skipped)<br>
+ * - integer division (truncated toward zero, like java's) is done with a fixed-point reciprocal multiply<br>
+ * - alpha/no-alpha is decided once per row, not per pixel<br>
+ * - rows and columns outside of the image are padded once (see {@link ConvolutionKernel.EdgeMode}), so the loops have no bounds checks<br>
+ * - when sums of positive (and negative) terms fit in 16 bits, r/b and a/g are packed into two 16-bit lanes of an int (SWAR),
+ *   so each tap takes two multiply-adds per pixel instead of one per channel (see {@link #isPacked()})<br>
+ * <br>
+ * reciprocal is exact only when sums are bounded, so too large multipliers fall back to the integer division (see {@link #hasReciprocal()}).
+ *
+ * @author meinside@gmail.com
+ * @since 26.10.18.
+ *
+ * last update 26.10.18.
+ */
+final public class PlanarConvolution
+{
+	private int size;
+
+	//non-zero taps
+	private int[] tapWeights;
+	private int[] tapRows;
+	private int[] tapColumns;
+
+	//fixed-point division: ((n + (n < 0 ? roundUp : 0) + offset) * reciprocal) >>> shift + addend
+	private int roundUp;
+	private int offset;
+	private long reciprocal = 0;	//0 if not usable
+	private int shift;
+	private int addend;
+
+	private int divider;	//positive
+	private int bias;
+
+	private boolean packed = false;
+	private boolean negativeTaps = false;
+
+	private PlanarConvolution()
+	{
+	}
+
+	/**
+	 *
+	 * @param multiplier [N][N]
+	 * @param divider
+	 * @param bias
+	 * @return null if divider is zero
+	 */
+	public static PlanarConvolution create(int[][] multiplier, int divider, int bias)
+	{
+		if(divider == 0)
+			return null;
+
+		//n / d == (-n) / (-d), so the divider is made positive
+		int sign = (divider < 0) ? -1 : 1;
+		long d = Math.abs((long)divider);
+
+		int size = multiplier.length;
+		int taps = 0, i, j;
+		long positive = 0, negative = 0;
+		for(i=0; i<size; i++)
+		{
+			for(j=0; j<size; j++)
+			{
+				long weight = (long)multiplier[i][j] * sign;
+				if(weight > 0)
+					positive += weight;
+				else if(weight < 0)
+					negative += weight;
+				if(weight != 0)
+					taps ++;
+			}
+		}
+
+		PlanarConvolution convolution = new PlanarConvolution();
+		convolution.size = size;
+		convolution.divider = (int)d;
+		convolution.bias = bias;
+		convolution.tapWeights = new int[taps];
+		convolution.tapRows = new int[taps];
+		convolution.tapColumns = new int[taps];
+		taps = 0;
+		for(i=0; i<size; i++)
+		{
+			for(j=0; j<size; j++)
+			{
+				if(multiplier[i][j] != 0)
+				{
+					convolution.tapWeights[taps] = multiplier[i][j] * sign;
+					convolution.tapRows[taps] = i;
+					convolution.tapColumns[taps] = j;
+					taps ++;
+				}
+			}
+		}
+
+		//each lane (of 16 bits) holds sum of positive or negative terms of a channel
+		convolution.packed = (positive * 255 <= 0xFFFF && -negative * 255 <= 0xFFFF);
+		convolution.negativeTaps = (negative < 0);
+
+		//bounds of sums, and of the numerator after moving it into non-negative range
+		long maxSum = positive * 255, minSum = negative * 255;
+		long k = (minSum < 0) ? (-minSum + d - 1) / d : 0;
+		long max = Math.max(maxSum, d - 2) + k * d;
+		if(minSum < Integer.MIN_VALUE || max >= (1L << 30) || max * d >= (1L << 61))
+			return convolution;
+
+		//floor(x / d) == (x * ceil(2^shift / d)) >>> shift for 0 <= x <= max, when max * d <= 2^shift
+		int shift = 0;
+		while((1L << shift) < max * d)
+			shift ++;
+		convolution.roundUp = (int)(d - 1);
+		convolution.offset = (int)(k * d);
+		convolution.reciprocal = ((1L << shift) + d - 1) / d;
+		convolution.shift = shift;
+		convolution.addend = (int)(bias - k);
+
+		return convolution;
+	}
+
+	/**
+	 * @return whether the divider is replaced with its fixed-point reciprocal or not
+	 */
+	public boolean hasReciprocal()
+	{
+		return reciprocal != 0;
+	}
+
+	/**
+	 * @return whether two channels are convolved in one int or not
+	 */
+	public boolean isPacked()
+	{
+		return packed;
+	}
+
+	/**
+	 * convolve rows fromY ~ toY-1 of srcPixels into dstPixels
+	 *
+	 * @param srcPixels
+	 * @param dstPixels
+	 * @param width
+	 * @param height
+	 * @param fromY should be >= N/2 for EdgeMode.NONE
+	 * @param toY should be <= height - N/2 for EdgeMode.NONE
+	 * @param alpha whether alpha channel is also filtered or not
+	 * @param edgeMode with EdgeMode.NONE, border columns are not touched
+	 */
+	public void convolve(int[] srcPixels, int[] dstPixels, int width, int height, int fromY, int toY, boolean alpha, ConvolutionKernel.EdgeMode edgeMode)
+	{
+		int half = size / 2;
+		boolean edges = (edgeMode != ConvolutionKernel.EdgeMode.NONE);
+		int from = edges ? 0 : half;
+		int to = edges ? width : width - half;
+		if(fromY >= toY || from >= to)
+			return;
+
+		if(packed)
+		{
+			convolvePacked(srcPixels, dstPixels, width, height, fromY, toY, from, to, alpha, edgeMode);
+			return;
+		}
+
+		int channels = alpha ? 4 : 3;	//b, g, r (, a)
+
+		//ring of unpacked source rows, padded by N/2 columns on each side: [(row + N/2) % size][channel][x + N/2]
+		int[][][] ring = new int[size][channels][width + half * 2];
+		int[][] sums = new int[channels][width];
+		int[] columns = edges ? ConvolutionKernel.columnMap(edgeMode, width, half) : null;
+
+		int y, x, c, t, weight, offset, n, p;
+		int[] plane, sum, pr, pg, pb, pa;
+
+		for(y=fromY-half; y<fromY+half; y++)
+			unpack(srcPixels, width, height, y, ring[(y + half) % size], channels, edgeMode, columns);
+
+		for(y=fromY; y<toY; y++)
+		{
+			unpack(srcPixels, width, height, y + half, ring[(y + half * 2) % size], channels, edgeMode, columns);
+
+			for(c=0; c<channels; c++)
+			{
+				sum = sums[c];
+				for(x=from; x<to; x++)
+					sum[x] = 0;
+
+				for(t=0; t<tapWeights.length; t++)
+				{
+					plane = ring[(y + tapRows[t]) % size][c];
+					weight = tapWeights[t];
+					offset = tapColumns[t];
+					for(x=from; x<to; x++)
+						sum[x] += weight * plane[x + offset];
+				}
+
+				if(reciprocal != 0)
+				{
+					for(x=from; x<to; x++)
+					{
+						n = sum[x];
+						n += (n >> 31) & roundUp;
+						n = (int)(((n + this.offset) * reciprocal) >>> shift) + addend;
+						sum[x] = (n < 0) ? 0 : (n > 255 ? 255 : n);
+					}
+				}
+				else
+				{
+					for(x=from; x<to; x++)
+					{
+						n = sum[x] / divider + bias;
+						sum[x] = (n < 0) ? 0 : (n > 255 ? 255 : n);
+					}
+				}
+			}
+
+			pb = sums[0];
+			pg = sums[1];
+			pr = sums[2];
+			p = y * width;
+			if(alpha)
+			{
+				pa = sums[3];
+				for(x=from; x<to; x++)
+					dstPixels[p + x] = (pa[x] << 24) | (pr[x] << 16) | (pg[x] << 8) | pb[x];
+			}
+			else
+			{
+				for(x=from; x<to; x++)
+					dstPixels[p + x] = 0xFF000000 | (pr[x] << 16) | (pg[x] << 8) | pb[x];
+			}
+		}
+	}
+
+	/**
+	 * {@link #convolve(int[], int[], int, int, int, int, boolean, ConvolutionKernel.EdgeMode)} with r/b and a/g packed in 16-bit lanes
+	 *
+	 * @param srcPixels
+	 * @param dstPixels
+	 * @param width
+	 * @param height
+	 * @param fromY
+	 * @param toY
+	 * @param from first column to be written
+	 * @param to last column to be written (exclusive)
+	 * @param alpha
+	 * @param edgeMode
+	 */
+	private void convolvePacked(int[] srcPixels, int[] dstPixels, int width, int height, int fromY, int toY, int from, int to, boolean alpha, ConvolutionKernel.EdgeMode edgeMode)
+	{
+		int half = size / 2;
+
+		//ring of packed source rows, padded by N/2 columns on each side: [(row + N/2) % size][rb or ag][x + N/2]
+		int[][][] ring = new int[size][2][width + half * 2];
+		int[] rbPositive = new int[width], agPositive = new int[width];
+		int[] rbNegative = negativeTaps ? new int[width] : null, agNegative = negativeTaps ? new int[width] : null;
+		int[] columns = (edgeMode != ConvolutionKernel.EdgeMode.NONE) ? ConvolutionKernel.columnMap(edgeMode, width, half) : null;
+
+		int y, x, t, weight, offset, p, rb, ag, rbn, agn, r, g, b, a;
+		int[] planeRb, planeAg, rbSum, agSum;
+
+		for(y=fromY-half; y<fromY+half; y++)
+			unpackPacked(srcPixels, width, height, y, ring[(y + half) % size], edgeMode, columns);
+
+		for(y=fromY; y<toY; y++)
+		{
+			unpackPacked(srcPixels, width, height, y + half, ring[(y + half * 2) % size], edgeMode, columns);
+
+			for(x=from; x<to; x++)
+				rbPositive[x] = agPositive[x] = 0;
+			if(negativeTaps)
+			{
+				for(x=from; x<to; x++)
+					rbNegative[x] = agNegative[x] = 0;
+			}
+
+			for(t=0; t<tapWeights.length; t++)
+			{
+				planeRb = ring[(y + tapRows[t]) % size][0];
+				planeAg = ring[(y + tapRows[t]) % size][1];
+				weight = tapWeights[t];
+				offset = tapColumns[t];
+				if(weight > 0)
+				{
+					rbSum = rbPositive;
+					agSum = agPositive;
+				}
+				else
+				{
+					rbSum = rbNegative;
+					agSum = agNegative;
+					weight = -weight;
+				}
+				for(x=from; x<to; x++)
+				{
+					rbSum[x] += weight * planeRb[x + offset];
+					agSum[x] += weight * planeAg[x + offset];
+				}
+			}
+
+			p = y * width;
+			for(x=from; x<to; x++)
+			{
+				rb = rbPositive[x];
+				ag = agPositive[x];
+				rbn = agn = 0;
+				if(negativeTaps)
+				{
+					rbn = rbNegative[x];
+					agn = agNegative[x];
+				}
+
+				r = scale((rb >>> 16) - (rbn >>> 16));
+				g = scale((ag & 0xFFFF) - (agn & 0xFFFF));
+				b = scale((rb & 0xFFFF) - (rbn & 0xFFFF));
+				a = alpha ? scale((ag >>> 16) - (agn >>> 16)) : 0xFF;
+				dstPixels[p + x] = (a << 24) | (r << 16) | (g << 8) | b;
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @param n sum of a channel
+	 * @return n / divider + bias, clamped to 0 ~ 255
+	 */
+	private int scale(int n)
+	{
+		if(reciprocal != 0)
+		{
+			n += (n >> 31) & roundUp;
+			n = (int)(((n + offset) * reciprocal) >>> shift) + addend;
+		}
+		else
+		{
+			n = n / divider + bias;
+		}
+		return (n < 0) ? 0 : (n > 255 ? 255 : n);
+	}
+
+	/**
+	 * convolve rows fromY ~ toY-1 of a luma plane (single channel) into dstLuma
+	 *
+	 * @param srcLuma
+	 * @param dstLuma
+	 * @param width
+	 * @param height
+	 * @param fromY should be >= N/2 for EdgeMode.NONE
+	 * @param toY should be <= height - N/2 for EdgeMode.NONE
+	 * @param edgeMode with EdgeMode.NONE, border columns are not touched
+	 */
+	public void convolveLuma(byte[] srcLuma, byte[] dstLuma, int width, int height, int fromY, int toY, ConvolutionKernel.EdgeMode edgeMode)
+	{
+		int half = size / 2;
+		boolean edges = (edgeMode != ConvolutionKernel.EdgeMode.NONE);
+		int from = edges ? 0 : half;
+		int to = edges ? width : width - half;
+		if(fromY >= toY || from >= to)
+			return;
+
+		//ring of source rows, padded by N/2 columns on each side: [(row + N/2) % size][x + N/2]
+		int[][] ring = new int[size][width + half * 2];
+		int[] sum = new int[width];
+		int[] columns = edges ? ConvolutionKernel.columnMap(edgeMode, width, half) : null;
+
+		int y, x, t, weight, offset, p;
+		int[] plane;
+
+		for(y=fromY-half; y<fromY+half; y++)
+			unpackLuma(srcLuma, width, height, y, ring[(y + half) % size], edgeMode, columns);
+
+		for(y=fromY; y<toY; y++)
+		{
+			unpackLuma(srcLuma, width, height, y + half, ring[(y + half * 2) % size], edgeMode, columns);
+
+			for(x=from; x<to; x++)
+				sum[x] = 0;
+			for(t=0; t<tapWeights.length; t++)
+			{
+				plane = ring[(y + tapRows[t]) % size];
+				weight = tapWeights[t];
+				offset = tapColumns[t];
+				for(x=from; x<to; x++)
+					sum[x] += weight * plane[x + offset];
+			}
+
+			p = y * width;
+			for(x=from; x<to; x++)
+				dstLuma[p + x] = (byte)scale(sum[x]);
+		}
+	}
+
+	/**
+	 * unpack row y of srcLuma into padded plane
+	 *
+	 * @param srcLuma
+	 * @param width
+	 * @param height
+	 * @param y can be out of the image (except for EdgeMode.NONE)
+	 * @param plane
+	 * @param edgeMode
+	 * @param columns source column of each padded column (null for EdgeMode.NONE)
+	 */
+	private void unpackLuma(byte[] srcLuma, int width, int height, int y, int[] plane, ConvolutionKernel.EdgeMode edgeMode, int[] columns)
+	{
+		int half = size / 2;
+		int p = ConvolutionKernel.edgeIndex(edgeMode, y, height) * width, x;
+
+		for(x=0; x<width; x++)
+			plane[x + half] = srcLuma[p + x] & 0xFF;
+		if(columns != null)
+		{
+			for(x=0; x<half; x++)
+			{
+				plane[x] = srcLuma[p + columns[x]] & 0xFF;
+				plane[width + half + x] = srcLuma[p + columns[width + half + x]] & 0xFF;
+			}
+		}
+	}
+
+	/**
+	 * unpack row y of srcPixels into padded r/b and a/g planes
+	 *
+	 * @param srcPixels
+	 * @param width
+	 * @param height
+	 * @param y can be out of the image (except for EdgeMode.NONE)
+	 * @param planes
+	 * @param edgeMode
+	 * @param columns source column of each padded column (null for EdgeMode.NONE)
+	 */
+	private void unpackPacked(int[] srcPixels, int width, int height, int y, int[][] planes, ConvolutionKernel.EdgeMode edgeMode, int[] columns)
+	{
+		int[] rb = planes[0], ag = planes[1];
+		int half = size / 2;
+		int p = ConvolutionKernel.edgeIndex(edgeMode, y, height) * width, color, x;
+
+		for(x=0; x<width; x++)
+		{
+			color = srcPixels[p + x];
+			rb[x + half] = color & 0x00FF00FF;
+			ag[x + half] = (color >>> 8) & 0x00FF00FF;
+		}
+		if(columns != null)
+		{
+			for(x=0; x<half; x++)
+			{
+				color = srcPixels[p + columns[x]];
+				rb[x] = color & 0x00FF00FF;
+				ag[x] = (color >>> 8) & 0x00FF00FF;
+
+				color = srcPixels[p + columns[width + half + x]];
+				rb[width + half + x] = color & 0x00FF00FF;
+				ag[width + half + x] = (color >>> 8) & 0x00FF00FF;
+			}
+		}
+	}
+
+	/**
+	 * unpack row y of srcPixels into padded channel planes
+	 *
+	 * @param srcPixels
+	 * @param width
+	 * @param height
+	 * @param y can be out of the image (except for EdgeMode.NONE)
+	 * @param planes
+	 * @param channels
+	 * @param edgeMode
+	 * @param columns source column of each padded column (null for EdgeMode.NONE)
+	 */
+	private void unpack(int[] srcPixels, int width, int height, int y, int[][] planes, int channels, ConvolutionKernel.EdgeMode edgeMode, int[] columns)
+	{
+		int[] pb = planes[0], pg = planes[1], pr = planes[2];
+		int half = size / 2;
+		int p = ConvolutionKernel.edgeIndex(edgeMode, y, height) * width, color, x;
+
+		for(x=0; x<width; x++)
+		{
+			color = srcPixels[p + x];
+			pb[x + half] = color & 0xFF;
+			pg[x + half] = (color >> 8) & 0xFF;
+			pr[x + half] = (color >> 16) & 0xFF;
+		}
+		if(columns != null)
+		{
+			for(x=0; x<half; x++)
+			{
+				color = srcPixels[p + columns[x]];
+				pb[x] = color & 0xFF;
+				pg[x] = (color >> 8) & 0xFF;
+				pr[x] = (color >> 16) & 0xFF;
+
+				color = srcPixels[p + columns[width + half + x]];
+				pb[width + half + x] = color & 0xFF;
+				pg[width + half + x] = (color >> 8) & 0xFF;
+				pr[width + half + x] = (color >> 16) & 0xFF;
+			}
+		}
+
+		if(channels == 4)
+		{
+			int[] pa = planes[3];
+			for(x=0; x<width; x++)
+				pa[x + half] = srcPixels[p + x] >>> 24;
+			if(columns != null)
+			{
+				for(x=0; x<half; x++)
+				{
+					pa[x] = srcPixels[p + columns[x]] >>> 24;
+					pa[width + half + x] = srcPixels[p + columns[width + half + x]] >>> 24;
+				}
+			}
+		}
+	}
+}
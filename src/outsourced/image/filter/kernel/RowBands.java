@@ -0,0 +1,220 @@
+package outsourced.image.filter.kernel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * splits a range of rows into bands and processes them on a shared, fixed-size thread pool
+ * <br>
+ * <br>
+ * each band only writes its own rows of the (shared) destination buffer,
+ * and reads its halo rows from the untouched source buffer,
+ * so the result does not depend on how the rows were split.
+ * <br>
+ * <br>
+ * {@link #run(int, int, Band)} returns only after all of its bands are finished (even when interrupted or failed),
+ * so buffers can be released by the caller right after it.
+ *
+ * @author meinside@gmail.com
+ * @since 26.10.18.
+ *
+ * last update 26.10.18.
+ */
+final public class RowBands
+{
+	public static final int MIN_ROWS_PER_BAND = 16;
+
+	private static ExecutorService pool = null;
+	private static volatile int threadCount = Runtime.getRuntime().availableProcessors();
+
+	private RowBands(){}
+
+	/**
+	 * process rows of a band
+	 */
+	public interface Band
+	{
+		/**
+		 *
+		 * @param fromY first row (inclusive)
+		 * @param toY last row (exclusive)
+		 */
+		public void process(int fromY, int toY);
+	}
+
+	/**
+	 *
+	 * @return number of threads used for processing bands
+	 */
+	public static int getThreadCount()
+	{
+		return threadCount;
+	}
+
+	/**
+	 * should be called before any band is processed
+	 *
+	 * @param count number of threads (1 = no parallelism)
+	 */
+	public static synchronized void setThreadCount(int count)
+	{
+		if(count < 1)
+			count = 1;
+
+		if(count != threadCount && pool != null)
+		{
+			pool.shutdown();
+			pool = null;
+		}
+		threadCount = count;
+	}
+
+	/**
+	 *
+	 * @return
+	 */
+	private static synchronized ExecutorService getPool()
+	{
+		if(pool == null)
+		{
+			pool = Executors.newFixedThreadPool(threadCount, new ThreadFactory(){
+				public Thread newThread(Runnable r)
+				{
+					Thread thread = new BandThread(r);
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return pool;
+	}
+
+	/**
+	 * process rows from fromY to toY in parallel bands, and return when all of them are done
+	 *
+	 * @param fromY first row (inclusive)
+	 * @param toY last row (exclusive)
+	 * @param band
+	 */
+	public static void run(int fromY, int toY, final Band band)
+	{
+		int rows = toY - fromY;
+		int bands;
+		ExecutorService executor = null;
+
+		//bands are not split again when already running on a band thread (would deadlock the fixed pool)
+		boolean split = !(Thread.currentThread() instanceof BandThread);
+		synchronized(RowBands.class)
+		{
+			bands = split ? Math.min(threadCount, rows / MIN_ROWS_PER_BAND) : 1;
+			if(bands > 1)
+				executor = getPool();	//(of the same thread count)
+		}
+
+		if(bands <= 1)
+		{
+			if(rows > 0)
+				band.process(fromY, toY);
+			return;
+		}
+
+		List<Future<?>> futures = new ArrayList<Future<?>>(bands - 1);
+		boolean completed = false;
+		try
+		{
+			int bandFrom = fromY, bandTo;
+			for(int i=0; i<bands-1; i++)
+			{
+				bandTo = fromY + (int)((long)rows * (i + 1) / bands);
+
+				final int from = bandFrom, to = bandTo;
+				try
+				{
+					futures.add(executor.submit(new Runnable(){
+						public void run()
+						{
+							band.process(from, to);
+						}
+					}));
+				}
+				catch(RejectedExecutionException e)
+				{
+					band.process(from, to);	//pool was shut down by setThreadCount() meanwhile
+				}
+
+				bandFrom = bandTo;
+			}
+
+			//last band runs on the calling thread
+			band.process(bandFrom, toY);
+			completed = true;
+		}
+		finally
+		{
+			//(bands still running would write into buffers which the caller is about to release)
+			Throwable failure = awaitAll(futures);
+			if(completed && failure != null)
+			{
+				if(failure instanceof RuntimeException)
+					throw (RuntimeException)failure;
+				if(failure instanceof Error)
+					throw (Error)failure;
+				throw new RuntimeException(failure);
+			}
+		}
+	}
+
+	/**
+	 * wait for all given futures uninterruptibly (interrupted status is restored afterwards)
+	 *
+	 * @param futures
+	 * @return first failure of them, or null
+	 */
+	private static Throwable awaitAll(List<Future<?>> futures)
+	{
+		Throwable failure = null;
+		boolean interrupted = false;
+		for(Future<?> future: futures)
+		{
+			while(true)
+			{
+				try
+				{
+					future.get();
+					break;
+				}
+				catch(InterruptedException e)
+				{
+					interrupted = true;
+				}
+				catch(ExecutionException e)
+				{
+					if(failure == null)
+						failure = e.getCause();
+					break;
+				}
+			}
+		}
+
+		if(interrupted)
+			Thread.currentThread().interrupt();
+		return failure;
+	}
+
+	/**
+	 * marks threads of the band pool
+	 */
+	private static class BandThread extends Thread
+	{
+		public BandThread(Runnable r)
+		{
+			super(r, "RowBands");
+		}
+	}
+}
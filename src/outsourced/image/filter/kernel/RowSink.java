@@ -0,0 +1,25 @@
+package outsourced.image.filter.kernel;
+
+import java.io.IOException;
+
+/**
+ * destination of processed pixel rows
+ *
+ * @author meinside@gmail.com
+ * @since 26.10.18.
+ *
+ * last update 26.10.18.
+ */
+public interface RowSink
+{
+	/**
+	 * write rows fromY ~ fromY+rows-1 (always written in top-down order, each row only once)
+	 *
+	 * @param fromY
+	 * @param rows
+	 * @param pixels ARGB pixels (width * rows), only valid during this call
+	 * @param offset
+	 * @throws IOException
+	 */
+	public void writeRows(int fromY, int rows, int[] pixels, int offset) throws IOException;
+}
@@ -0,0 +1,35 @@
+package outsourced.image.filter.kernel;
+
+import java.io.IOException;
+
+/**
+ * source of pixel rows, for filtering images which do not fit in memory
+ *
+ * @author meinside@gmail.com
+ * @since 26.10.18.
+ *
+ * last update 26.10.18.
+ */
+public interface RowSource
+{
+	/**
+	 * @return width of the image in pixels
+	 */
+	public int getWidth();
+
+	/**
+	 * @return height of the image in pixels
+	 */
+	public int getHeight();
+
+	/**
+	 * read rows fromY ~ fromY+rows-1 (always requested in top-down order)
+	 *
+	 * @param fromY
+	 * @param rows
+	 * @param pixels ARGB pixels (width * rows) are stored here
+	 * @param offset
+	 * @throws IOException
+	 */
+	public void readRows(int fromY, int rows, int[] pixels, int offset) throws IOException;
+}
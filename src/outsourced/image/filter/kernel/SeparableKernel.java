@@ -0,0 +1,290 @@
+package outsourced.image.filter.kernel;
+
+/**
+ * rank-1 (separable) convolution kernel: multiplier[i][j] == vertical[i] * horizontal[j]
+ * <br>
+ * <br>
+ * convolves with a horizontal pass followed by a vertical pass,
+ * which takes 2*N multiply-adds per channel instead of N*N.
+ * since all sums are exact integers, the result is identical to the full N*N convolution.
+ *
+ * @author meinside@gmail.com
+ * @since 26.10.18.
+ *
+ * last update 26.10.18.
+ */
+final public class SeparableKernel
+{
+	private int size;
+	private int[] vertical;
+	private int[] horizontal;
+
+	/**
+	 *
+	 * @param vertical
+	 * @param horizontal
+	 */
+	private SeparableKernel(int[] vertical, int[] horizontal)
+	{
+		this.size = vertical.length;
+		this.vertical = vertical;
+		this.horizontal = horizontal;
+	}
+
+	/**
+	 * factor given square matrix into vertical and horizontal integer vectors
+	 *
+	 * @param multiplier [N][N]
+	 * @return null if given matrix is not separable, or separating it does not save any work
+	 */
+	public static SeparableKernel factor(int[][] multiplier)
+	{
+		int size = multiplier.length;
+		int i, j;
+
+		//first non-zero row becomes the horizontal vector (divided by its gcd)
+		int[] base = null;
+		for(i=0; i<size && base == null; i++)
+		{
+			for(j=0; j<size; j++)
+			{
+				if(multiplier[i][j] != 0)
+				{
+					base = multiplier[i];
+					break;
+				}
+			}
+		}
+		if(base == null)
+			return null;
+
+		int gcd = 0;
+		for(j=0; j<size; j++)
+			gcd = gcd(gcd, Math.abs(base[j]));
+
+		int[] horizontal = new int[size];
+		int pivot = -1;
+		for(j=0; j<size; j++)
+		{
+			horizontal[j] = base[j] / gcd;
+			if(pivot < 0 && horizontal[j] != 0)
+				pivot = j;
+		}
+
+		//every row should be an integer multiple of the horizontal vector
+		int[] vertical = new int[size];
+		for(i=0; i<size; i++)
+		{
+			if(multiplier[i][pivot] % horizontal[pivot] != 0)
+				return null;
+
+			vertical[i] = multiplier[i][pivot] / horizontal[pivot];
+			for(j=0; j<size; j++)
+			{
+				if(multiplier[i][j] != vertical[i] * horizontal[j])
+					return null;
+			}
+		}
+
+		//not worth it (eg. center-only kernels)
+		int full = 0, separated = 0;
+		for(i=0; i<size; i++)
+		{
+			for(j=0; j<size; j++)
+			{
+				if(multiplier[i][j] != 0)
+					full ++;
+			}
+			if(vertical[i] != 0)
+				separated ++;
+			if(horizontal[i] != 0)
+				separated ++;
+		}
+		if(separated >= full)
+			return null;
+
+		return new SeparableKernel(vertical, horizontal);
+	}
+
+	/**
+	 *
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	private static int gcd(int a, int b)
+	{
+		while(b != 0)
+		{
+			int t = a % b;
+			a = b;
+			b = t;
+		}
+		return a;
+	}
+
+	/**
+	 * @return the vertical vector
+	 */
+	public int[] getVertical()
+	{
+		return vertical;
+	}
+
+	/**
+	 * @return the horizontal vector
+	 */
+	public int[] getHorizontal()
+	{
+		return horizontal;
+	}
+
+	/**
+	 * convolve rows fromY ~ toY-1 of src into dst
+	 *
+	 * @param src
+	 * @param dst
+	 * @param width
+	 * @param height
+	 * @param fromY should be >= N/2 for EdgeMode.NONE
+	 * @param toY should be <= height - N/2 for EdgeMode.NONE
+	 * @param divider
+	 * @param bias
+	 * @param alpha whether alpha channel is also filtered or not
+	 * @param edgeMode with EdgeMode.NONE, border columns are not touched
+	 */
+	public void convolve(int[] src, int[] dst, int width, int height, int fromY, int toY, int divider, int bias, boolean alpha, ConvolutionKernel.EdgeMode edgeMode)
+	{
+		int half = size / 2;
+		boolean edges = (edgeMode != ConvolutionKernel.EdgeMode.NONE);
+		int from = edges ? 0 : half;
+		int to = edges ? width : width - half;
+		if(fromY >= toY || from >= to)
+			return;
+
+		int[] columns = edges ? ConvolutionKernel.columnMap(edgeMode, width, half) : null;
+
+		//horizontally filtered rows, kept in a ring of N rows
+		int[] ha = new int[size * width];
+		int[] hr = new int[size * width];
+		int[] hg = new int[size * width];
+		int[] hb = new int[size * width];
+		int[] rowOffsets = new int[size];
+
+		int x, y, i, w, p, o;
+		int sa, sr, sg, sb;
+		int a, r, g, b;
+
+		for(y=fromY-half; y<fromY+half; y++)
+			filterRow(src, width, height, y, ha, hr, hg, hb, edgeMode, columns);
+
+		for(y=fromY; y<toY; y++)
+		{
+			filterRow(src, width, height, y + half, ha, hr, hg, hb, edgeMode, columns);
+
+			for(i=0; i<size; i++)
+				rowOffsets[i] = ((y + i) % size) * width;
+
+			p = y * width + from;
+			for(x=from; x<to; x++)
+			{
+				sa = sr = sg = sb = 0;
+				for(i=0; i<size; i++)
+				{
+					w = vertical[i];
+					o = rowOffsets[i] + x;
+					sa += w * ha[o];
+					sr += w * hr[o];
+					sg += w * hg[o];
+					sb += w * hb[o];
+				}
+
+				r = sr / divider + bias;
+				g = sg / divider + bias;
+				b = sb / divider + bias;
+				r = (r < 0) ? 0 : (r > 255 ? 255 : r);
+				g = (g < 0) ? 0 : (g > 255 ? 255 : g);
+				b = (b < 0) ? 0 : (b > 255 ? 255 : b);
+
+				if(alpha)
+				{
+					a = sa / divider + bias;
+					a = (a < 0) ? 0 : (a > 255 ? 255 : a);
+				}
+				else
+				{
+					a = 255;
+				}
+
+				dst[p++] = (a << 24) | (r << 16) | (g << 8) | b;
+			}
+		}
+	}
+
+	/**
+	 * horizontal pass of one row into its ring slot
+	 *
+	 * @param src
+	 * @param width
+	 * @param height
+	 * @param y can be out of the image (except for EdgeMode.NONE)
+	 * @param ha
+	 * @param hr
+	 * @param hg
+	 * @param hb
+	 * @param edgeMode
+	 * @param columns source column of each padded column (null for EdgeMode.NONE)
+	 */
+	private void filterRow(int[] src, int width, int height, int y, int[] ha, int[] hr, int[] hg, int[] hb, ConvolutionKernel.EdgeMode edgeMode, int[] columns)
+	{
+		int half = size / 2;
+		int o = ((y + half) % size) * width;
+		int row = ConvolutionKernel.edgeIndex(edgeMode, y, height) * width;
+		int p = row - half;
+		int x, j, w, color;
+		int sa, sr, sg, sb;
+
+		//border columns, read through padded column map
+		if(columns != null)
+		{
+			for(x=0; x<width; x++)
+			{
+				if(x >= half && x < width - half)
+					continue;
+
+				sa = sr = sg = sb = 0;
+				for(j=0; j<size; j++)
+				{
+					w = horizontal[j];
+					color = src[row + columns[x + j]];
+					sa += w * ((color >> 24) & 0xFF);
+					sr += w * ((color >> 16) & 0xFF);
+					sg += w * ((color >> 8) & 0xFF);
+					sb += w * (color & 0xFF);
+				}
+				ha[o + x] = sa;
+				hr[o + x] = sr;
+				hg[o + x] = sg;
+				hb[o + x] = sb;
+			}
+		}
+
+		for(x=half; x<width-half; x++)
+		{
+			sa = sr = sg = sb = 0;
+			for(j=0; j<size; j++)
+			{
+				w = horizontal[j];
+				color = src[p + x + j];
+				sa += w * ((color >> 24) & 0xFF);
+				sr += w * ((color >> 16) & 0xFF);
+				sg += w * ((color >> 8) & 0xFF);
+				sb += w * (color & 0xFF);
+			}
+			ha[o + x] = sa;
+			hr[o + x] = sr;
+			hg[o + x] = sg;
+			hb[o + x] = sb;
+		}
+	}
+}